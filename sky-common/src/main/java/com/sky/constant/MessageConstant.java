@@ -23,6 +23,14 @@ public class MessageConstant {
     public static final String DISH_BE_RELATED_BY_SETMEAL = "当前菜品关联了套餐,不能删除";
     public static final String ORDER_STATUS_ERROR = "订单状态错误";
     public static final String ORDER_NOT_FOUND = "订单不存在";
+    public static final String ORDER_CURSOR_ERROR = "分页游标错误";
+    public static final String ORDER_PAGE_SIZE_ERROR = "每页条数必须在1到100之间";
     public static final String ALREADY_EXISTS = "已存在";
+    public static final String REPORT_DATE_RANGE_ERROR = "开始日期不能晚于结束日期";
+    public static final String REPORT_DATE_RANGE_TOO_LONG = "导出的日期区间过长";
+    public static final String REPORT_EXPORT_BUSY = "导出任务过多，请稍后再试";
+    public static final String REPORT_EXPORT_JOB_NOT_FOUND = "导出任务不存在或已过期";
+    public static final String REPORT_EXPORT_JOB_NOT_FINISHED = "导出任务未完成";
+    public static final String REQUEST_BUSY = "系统繁忙，请稍后再试";
 
 }
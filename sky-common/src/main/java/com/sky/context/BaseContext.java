@@ -16,4 +16,32 @@ public class BaseContext {
         threadLocal.remove();
     }
 
+    /**
+     * 包装需要在其他线程中执行的任务，把当前线程的用户id传递到执行任务的线程，
+     * 任务结束后恢复执行线程原来的用户id，避免线程池中的线程残留上一个任务的用户id
+     *
+     * @param task
+     * @return
+     */
+    public static Runnable wrap(Runnable task) {
+        Long currentId = getCurrentId();
+        return () -> {
+            Long previousId = getCurrentId();
+            set(currentId);
+            try {
+                task.run();
+            } finally {
+                set(previousId);
+            }
+        };
+    }
+
+    private static void set(Long id) {
+        if (id == null) {
+            threadLocal.remove();
+        } else {
+            threadLocal.set(id);
+        }
+    }
+
 }
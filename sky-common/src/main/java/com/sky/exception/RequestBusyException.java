@@ -0,0 +1,12 @@
+package com.sky.exception;
+
+/**
+ * 请求排队过久，未执行任何业务逻辑，客户端可以安全重试
+ */
+public class RequestBusyException extends BaseException {
+
+    public RequestBusyException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.async-request")
+@Data
+public class AsyncRequestProperties {
+
+    /**
+     * 是否在专门的线程池中异步处理耗时接口（微信登录、下单、支付），关闭时在请求线程中同步处理
+     */
+    private boolean enabled = false;
+
+    /**
+     * 处理异步请求的线程数
+     */
+    private int threads = 64;
+
+    /**
+     * 等待处理的异步请求数上限，超过后在请求线程中同步处理
+     */
+    private int queueCapacity = 200;
+
+    /**
+     * 异步请求排队等待的超时时间（毫秒），超时未开始处理的请求直接返回系统繁忙，不再执行；
+     * 已开始处理的请求不设超时，一直等到处理完成，避免客户端收到超时后重试导致重复下单、支付
+     */
+    private long queueTimeout = 10000;
+
+}
@@ -0,0 +1,35 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cache")
+@Data
+public class CacheProperties {
+
+    /**
+     * 进程内缓存（Redis之前的一级缓存）相关配置
+     */
+    private long localMaxSize = 1000;
+    private long localTtl = 60;
+
+    /**
+     * Redis中菜品缓存的过期时间（秒），作为缓存清理遗漏时的兜底
+     */
+    private long redisTtl = 3600;
+
+    /**
+     * Redis缓存值的序列化方式：json（带类型信息的Jackson）或 jdk
+     * 序列化结果达到压缩阈值（字节）时使用GZIP压缩，小于等于0表示不压缩
+     */
+    private String serializer = "json";
+    private int compressThreshold = 1024;
+
+    /**
+     * 缓存被清理后是否继续返回进程内的旧数据，同时在后台刷新
+     */
+    private boolean staleWhileRevalidate = false;
+
+}
@@ -23,4 +23,9 @@ public class JwtProperties {
     private long userTtl;
     private String userTokenName;
 
+    /**
+     * 已校验令牌缓存的最大条目数，管理端、用户端各一个缓存
+     */
+    private long tokenCacheSize = 10000;
+
 }
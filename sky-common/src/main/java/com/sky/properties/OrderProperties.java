@@ -0,0 +1,34 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order")
+@Data
+public class OrderProperties {
+
+    public static final String SEARCH_MODE_LIKE = "like";
+    public static final String SEARCH_MODE_PREFIX = "prefix";
+    public static final String SEARCH_MODE_SUFFIX = "suffix";
+
+    /**
+     * 生成订单号使用的机器id（0-1023），多实例部署时每个实例必须不同
+     * 不配置时启动时从Redis自动分配
+     */
+    private Long workerId;
+
+    /**
+     * 订单号、手机号的搜索方式：
+     * like（任意位置模糊匹配，无法使用索引）、
+     * prefix（前缀匹配，完整手机号精确匹配）、
+     * suffix（同prefix，手机号的部分匹配通过order_phone_suffix表实现）
+     */
+    private String searchMode = SEARCH_MODE_PREFIX;
+
+    public boolean isPhoneSuffixSearch() {
+        return SEARCH_MODE_SUFFIX.equals(searchMode);
+    }
+
+}
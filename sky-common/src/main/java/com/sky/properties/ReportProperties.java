@@ -0,0 +1,42 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.report")
+@Data
+public class ReportProperties {
+
+    /**
+     * 导出运营数据报表时日期区间的最大天数
+     */
+    private int exportMaxDays = 366;
+
+    /**
+     * 导出时内存中保留的最大行数，超过后写入临时文件
+     */
+    private int exportRowAccessWindow = 100;
+
+    /**
+     * 异步导出生成的报表文件的存放目录
+     */
+    private String exportDir = System.getProperty("java.io.tmpdir") + "/sky-report";
+
+    /**
+     * 报表文件的有效期（秒），有效期内相同日期区间的导出任务复用已生成的文件
+     */
+    private long exportFileTtl = 600;
+
+    /**
+     * 生成报表的线程数
+     */
+    private int exportThreads = 2;
+
+    /**
+     * 等待生成的导出任务数上限，超过后拒绝新的任务
+     */
+    private int exportQueueCapacity = 10;
+
+}
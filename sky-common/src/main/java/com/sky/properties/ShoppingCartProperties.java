@@ -0,0 +1,29 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.shopping-cart")
+@Data
+public class ShoppingCartProperties {
+
+    public static final String STORAGE_DB = "db";
+    public static final String STORAGE_REDIS = "redis";
+
+    /**
+     * 购物车存储方式：db（shopping_cart表）或 redis（每个用户一个hash）
+     */
+    private String storage = STORAGE_DB;
+
+    /**
+     * redis存储时购物车的过期时间（秒），每次加购后重新计算
+     */
+    private long ttl = 7 * 24 * 3600;
+
+    public boolean isRedisStorage() {
+        return STORAGE_REDIS.equals(storage);
+    }
+
+}
@@ -4,7 +4,10 @@ import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+
+import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.Key;
 import java.util.Date;
 import java.util.Map;
 
@@ -55,4 +58,27 @@ public class JwtUtil {
         return claims;
     }
 
+    /**
+     * 根据秘钥生成签名使用的Key，只需生成一次，避免每次解析时重新编码秘钥
+     *
+     * @param secretKey jwt秘钥
+     * @return
+     */
+    public static Key getSigningKey(String secretKey) {
+        return new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), SignatureAlgorithm.HS256.getJcaName());
+    }
+
+    /**
+     * Token解密
+     *
+     * @param signingKey 由getSigningKey生成的Key
+     * @param token      加密后的token
+     * @return
+     */
+    public static Claims parseJWT(Key signingKey, String token) {
+        return Jwts.parser()
+                .setSigningKey(signingKey)
+                .parseClaimsJws(token).getBody();
+    }
+
 }
@@ -0,0 +1,80 @@
+package com.sky.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法id生成器：41位毫秒时间戳 + 10位机器id + 12位序列号
+ * 无锁实现，同一机器id内单调递增，不同机器id之间不会重复
+ * 机器id租约失效时通过suspend暂停生成，重新获取机器id后通过setWorkerId恢复
+ */
+public class SnowflakeIdGenerator {
+
+    //起始时间 2023-01-01 00:00:00 UTC
+    private static final long EPOCH = 1672531200000L;
+
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    //机器id，小于0表示已暂停生成
+    private volatile long workerId;
+
+    //上一次生成的 时间戳 << SEQUENCE_BITS | 序列号
+    private final AtomicLong last = new AtomicLong();
+
+    public SnowflakeIdGenerator(long workerId) {
+        setWorkerId(workerId);
+    }
+
+    /**
+     * 设置机器id，暂停状态下设置后恢复生成
+     *
+     * @param workerId
+     */
+    public void setWorkerId(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId必须在0到" + MAX_WORKER_ID + "之间：" + workerId);
+        }
+        this.workerId = workerId;
+    }
+
+    /**
+     * 暂停生成id，之后调用nextId抛出IllegalStateException，直到重新设置机器id
+     */
+    public void suspend() {
+        this.workerId = -1;
+    }
+
+    /**
+     * 生成下一个id
+     *
+     * @return
+     */
+    public long nextId() {
+        long workerId = this.workerId;
+        if (workerId < 0) {
+            throw new IllegalStateException("机器id不可用，暂停生成id");
+        }
+        long prev;
+        long next;
+        do {
+            prev = last.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            if (now > (prev >>> SEQUENCE_BITS)) {
+                //进入新的毫秒，序列号从0开始
+                next = now << SEQUENCE_BITS;
+            } else {
+                //同一毫秒内或时钟回拨，在上一个值的基础上递增
+                //序列号用完时进位到下一毫秒，保证不重复且单调递增
+                next = prev + 1;
+            }
+        } while (!last.compareAndSet(prev, next));
+
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & SEQUENCE_MASK;
+        return (timestamp << (WORKER_ID_BITS + SEQUENCE_BITS)) | (workerId << SEQUENCE_BITS) | sequence;
+    }
+
+}
@@ -2,11 +2,14 @@ package com.sky.utils;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.HttpClientProperties;
 import com.sky.properties.WeChatProperties;
 import com.wechat.pay.contrib.apache.httpclient.WechatPayHttpClientBuilder;
 import com.wechat.pay.contrib.apache.httpclient.util.PemUtil;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
@@ -17,9 +20,10 @@ import org.apache.http.util.EntityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.security.PrivateKey;
 import java.security.Signature;
@@ -28,11 +32,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 微信支付工具类
+ * 商户私钥、平台证书只在第一次使用和文件发生变化时加载，调用微信接口的客户端（带连接池）长期复用
  */
 @Component
+@Slf4j
 public class WeChatPayUtil {
 
     //微信支付下单接口地址
@@ -41,34 +48,79 @@ public class WeChatPayUtil {
     //申请退款接口地址
     public static final String REFUNDS = "https://api.mch.weixin.qq.com/v3/refund/domestic/refunds";
 
+    //检查私钥、证书文件是否变化的间隔（毫秒）
+    private static final long RELOAD_CHECK_INTERVAL = 60 * 1000;
+
     @Autowired
     private WeChatProperties weChatProperties;
 
+    @Autowired
+    private HttpClientProperties httpClientProperties;
+
+    //当前使用的客户端
+    private volatile PayClient payClient;
+    //被替换下来的客户端，下一次替换时关闭，保证替换时正在进行的请求能够完成
+    private PayClient retiredPayClient;
+    //上一次检查文件变化的时间
+    private volatile long lastCheckTime;
+
+    @PreDestroy
+    public void destroy() {
+        closeQuietly(retiredPayClient);
+        closeQuietly(payClient);
+    }
+
     /**
      * 获取调用微信接口的客户端工具对象
+     * 私钥、证书文件的修改时间变化后重新加载，加载失败时继续使用原来的客户端
      *
      * @return
      */
-    private CloseableHttpClient getClient() {
-        PrivateKey merchantPrivateKey = null;
+    private PayClient getClient() throws IOException {
+        PayClient current = payClient;
+        long now = System.currentTimeMillis();
+        if (current != null && now - lastCheckTime < RELOAD_CHECK_INTERVAL) {
+            return current;
+        }
+
+        synchronized (this) {
+            current = payClient;
+            if (current != null && now - lastCheckTime < RELOAD_CHECK_INTERVAL) {
+                return current;
+            }
+            lastCheckTime = now;
+
+            File keyFile = new File(weChatProperties.getPrivateKeyFilePath());
+            File certFile = new File(weChatProperties.getWeChatPayCertFilePath());
+            if (current != null && current.isUpToDate(keyFile, certFile)) {
+                return current;
+            }
+
+            try {
+                PayClient loaded = new PayClient(keyFile, certFile);
+                closeQuietly(retiredPayClient);
+                retiredPayClient = current;
+                payClient = loaded;
+                log.info("微信支付私钥、证书已{}", current == null ? "加载" : "重新加载");
+                return loaded;
+            } catch (IOException | RuntimeException e) {
+                if (current == null) {
+                    throw e;
+                }
+                log.error("重新加载微信支付私钥、证书失败，继续使用原来的私钥、证书", e);
+                return current;
+            }
+        }
+    }
+
+    private void closeQuietly(PayClient client) {
+        if (client == null) {
+            return;
+        }
         try {
-            //merchantPrivateKey商户API私钥，如何加载商户API私钥请看常见问题
-            merchantPrivateKey = PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath())));
-            //加载平台证书文件
-            X509Certificate x509Certificate = PemUtil.loadCertificate(new FileInputStream(new File(weChatProperties.getWeChatPayCertFilePath())));
-            //wechatPayCertificates微信支付平台证书列表。你也可以使用后面章节提到的“定时更新平台证书功能”，而不需要关心平台证书的来龙去脉
-            List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
-
-            WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
-                    .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
-                    .withWechatPay(wechatPayCertificates);
-
-            // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
-            CloseableHttpClient httpClient = builder.build();
-            return httpClient;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return null;
+            client.httpClient.close();
+        } catch (IOException e) {
+            log.warn("关闭微信支付客户端失败：{}", e.getMessage());
         }
     }
 
@@ -80,21 +132,15 @@ public class WeChatPayUtil {
      * @return
      */
     private String post(String url, String body) throws Exception {
-        CloseableHttpClient httpClient = getClient();
-
         HttpPost httpPost = new HttpPost(url);
         httpPost.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
         httpPost.addHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
         httpPost.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
         httpPost.setEntity(new StringEntity(body, "UTF-8"));
 
-        CloseableHttpResponse response = httpClient.execute(httpPost);
-        try {
-            String bodyAsString = EntityUtils.toString(response.getEntity());
-            return bodyAsString;
-        } finally {
-            httpClient.close();
-            response.close();
+        //只关闭响应，连接归还连接池
+        try (CloseableHttpResponse response = getClient().httpClient.execute(httpPost)) {
+            return EntityUtils.toString(response.getEntity());
         }
     }
 
@@ -105,20 +151,13 @@ public class WeChatPayUtil {
      * @return
      */
     private String get(String url) throws Exception {
-        CloseableHttpClient httpClient = getClient();
-
         HttpGet httpGet = new HttpGet(url);
         httpGet.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
         httpGet.addHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
         httpGet.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
 
-        CloseableHttpResponse response = httpClient.execute(httpGet);
-        try {
-            String bodyAsString = EntityUtils.toString(response.getEntity());
-            return bodyAsString;
-        } finally {
-            httpClient.close();
-            response.close();
+        try (CloseableHttpResponse response = getClient().httpClient.execute(httpGet)) {
+            return EntityUtils.toString(response.getEntity());
         }
     }
 
@@ -168,7 +207,7 @@ public class WeChatPayUtil {
         String bodyAsString = jsapi(orderNum, total, description, openid);
         //解析返回结果
         JSONObject jsonObject = JSON.parseObject(bodyAsString);
-        System.out.println(jsonObject);
+        log.info("微信支付下单结果：{}", jsonObject);
 
         String prepayId = jsonObject.getString("prepay_id");
         if (prepayId != null) {
@@ -188,7 +227,7 @@ public class WeChatPayUtil {
             byte[] message = signMessage.getBytes();
 
             Signature signature = Signature.getInstance("SHA256withRSA");
-            signature.initSign(PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath()))));
+            signature.initSign(getClient().merchantPrivateKey);
             signature.update(message);
             String packageSign = Base64.getEncoder().encodeToString(signature.sign());
 
@@ -232,4 +271,49 @@ public class WeChatPayUtil {
         //调用申请退款接口
         return post(REFUNDS, body);
     }
+
+    /**
+     * 调用微信接口的客户端：商户私钥、平台证书、自动签名验签的HttpClient，以及加载时文件的修改时间
+     */
+    private class PayClient {
+        private final PrivateKey merchantPrivateKey;
+        private final CloseableHttpClient httpClient;
+        private final long keyLastModified;
+        private final long certLastModified;
+
+        private PayClient(File keyFile, File certFile) throws IOException {
+            keyLastModified = keyFile.lastModified();
+            certLastModified = certFile.lastModified();
+            //merchantPrivateKey商户API私钥
+            try (FileInputStream keyInput = new FileInputStream(keyFile);
+                 FileInputStream certInput = new FileInputStream(certFile)) {
+                merchantPrivateKey = PemUtil.loadPrivateKey(keyInput);
+                //加载平台证书文件
+                X509Certificate x509Certificate = PemUtil.loadCertificate(certInput);
+                List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
+
+                RequestConfig requestConfig = RequestConfig.custom()
+                        .setConnectTimeout(httpClientProperties.getConnectTimeout())
+                        .setConnectionRequestTimeout(httpClientProperties.getConnectionRequestTimeout())
+                        .setSocketTimeout(httpClientProperties.getSocketTimeout())
+                        .build();
+
+                // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
+                httpClient = WechatPayHttpClientBuilder.create()
+                        .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
+                        .withWechatPay(wechatPayCertificates)
+                        .setMaxConnTotal(httpClientProperties.getMaxTotal())
+                        .setMaxConnPerRoute(httpClientProperties.getMaxPerRoute())
+                        .setDefaultRequestConfig(requestConfig)
+                        .evictExpiredConnections()
+                        .evictIdleConnections(httpClientProperties.getMaxIdleTime(), TimeUnit.MILLISECONDS)
+                        .build();
+            }
+        }
+
+        //加载后私钥、证书文件是否没有变化
+        private boolean isUpToDate(File keyFile, File certFile) {
+            return keyFile.lastModified() == keyLastModified && certFile.lastModified() == certLastModified;
+        }
+    }
 }
@@ -0,0 +1,30 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 按天分组的订单统计结果
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DailyOrderStatisticsDTO implements Serializable {
+    //日期
+    private LocalDate orderDate;
+
+    //营业额：当天“已完成”订单的金额合计
+    private Double turnover;
+
+    //当天订单总数
+    private Integer totalOrderCount;
+
+    //当天有效订单数（“已完成”订单）
+    private Integer validOrderCount;
+}
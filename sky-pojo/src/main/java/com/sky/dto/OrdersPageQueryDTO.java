@@ -29,4 +29,18 @@ public class OrdersPageQueryDTO implements Serializable {
 
     private Long userId;
 
+    //搜索方式，由服务端根据配置设置
+    private String searchMode;
+
+    //游标分页：上一页返回的游标，传空字符串表示查询第一页，不传则按页码分页
+    private String cursor;
+
+    //游标分页时是否统计总数
+    private Boolean withTotal;
+
+    //由游标解析出的下单时间和订单id
+    private LocalDateTime cursorTime;
+
+    private Long cursorId;
+
 }
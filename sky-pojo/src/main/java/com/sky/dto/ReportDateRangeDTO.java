@@ -0,0 +1,24 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 报表的日期区间（包含两端）
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ReportDateRangeDTO implements Serializable {
+    //开始日期
+    private LocalDate begin;
+
+    //结束日期
+    private LocalDate end;
+}
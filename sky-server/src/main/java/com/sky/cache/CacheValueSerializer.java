@@ -0,0 +1,122 @@
+package com.sky.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Redis缓存值的序列化器
+ * 序列化结果超过阈值时使用GZIP压缩；反序列化时兼容JDK序列化格式的旧数据
+ */
+public class CacheValueSerializer implements RedisSerializer<Object> {
+
+    //JDK序列化数据的魔数 0xACED
+    private static final byte JDK_MAGIC_0 = (byte) 0xAC;
+    private static final byte JDK_MAGIC_1 = (byte) 0xED;
+
+    //实际执行序列化的序列化器
+    private final RedisSerializer<Object> delegate;
+    //压缩阈值（字节），小于等于0时不压缩
+    private final int compressThreshold;
+    //读取JDK序列化格式的旧数据
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+
+    public CacheValueSerializer(RedisSerializer<Object> delegate, int compressThreshold) {
+        this.delegate = delegate;
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * 创建JSON格式的缓存值序列化器
+     * 使用专门的对象映射器：时间按ISO格式完整保留秒和纳秒（项目的JacksonObjectMapper只保留到分钟，
+     * 用于接口响应，不能用于缓存），并记录类型信息，反序列化时还原为原来的类型
+     *
+     * @return
+     */
+    public static RedisSerializer<Object> json() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        objectMapper.activateDefaultTyping(
+                BasicPolymorphicTypeValidator.builder()
+                        .allowIfSubType("com.sky.")
+                        .allowIfSubType("java.")
+                        .build(),
+                ObjectMapper.DefaultTyping.NON_FINAL,
+                JsonTypeInfo.As.PROPERTY);
+        return new GenericJackson2JsonRedisSerializer(objectMapper);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte[] bytes = delegate.serialize(value);
+        if (bytes == null || compressThreshold <= 0 || bytes.length < compressThreshold) {
+            return bytes;
+        }
+        return gzip(bytes);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (isGzip(bytes)) {
+            bytes = gunzip(bytes);
+        }
+        if (isJdk(bytes)) {
+            //切换序列化格式之前写入的数据
+            return jdkSerializer.deserialize(bytes);
+        }
+        return delegate.deserialize(bytes);
+    }
+
+    private static boolean isGzip(byte[] bytes) {
+        return bytes.length > 1
+                && bytes[0] == (byte) GZIPInputStream.GZIP_MAGIC
+                && bytes[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+
+    private static boolean isJdk(byte[] bytes) {
+        return bytes.length > 1 && bytes[0] == JDK_MAGIC_0 && bytes[1] == JDK_MAGIC_1;
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            gzipOutputStream.write(bytes);
+        } catch (IOException e) {
+            throw new SerializationException("压缩缓存数据失败", e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] bytes) {
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, len);
+            }
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("解压缓存数据失败", e);
+        }
+    }
+}
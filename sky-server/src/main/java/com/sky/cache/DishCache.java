@@ -0,0 +1,223 @@
+package com.sky.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.properties.CacheProperties;
+import com.sky.vo.DishVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 菜品缓存：进程内Caffeine缓存 + Redis缓存两级
+ * 管理端修改菜品后，通过Redis发布订阅通知所有节点清理进程内缓存
+ * 缓存未命中时同一个key在本节点只有一个请求查询数据库
+ */
+@Component
+@Slf4j
+public class DishCache implements MessageListener {
+
+    //缓存key前缀，key=dish_分类id
+    public static final String KEY_PREFIX = "dish_";
+    //记录所有已写入redis的菜品缓存key的集合，清理时无需使用keys命令扫描
+    public static final String KEY_REGISTRY = "dish_cache_keys";
+    //缓存清理通知的频道
+    public static final String EVICT_CHANNEL = "dish_cache_evict";
+    //清理全部缓存时发布的消息
+    private static final String EVICT_ALL = "*";
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private CacheProperties cacheProperties;
+
+    //进程内缓存
+    private Cache<String, List<DishVO>> localCache;
+    //已被清理、等待后台刷新的进程内缓存key，仅在开启staleWhileRevalidate时使用
+    private final Set<String> staleKeys = ConcurrentHashMap.newKeySet();
+    //已提交后台刷新、尚未完成的key，同一个key同时只提交一次刷新
+    private final Set<String> refreshingKeys = ConcurrentHashMap.newKeySet();
+    //同一个key同时只有一个请求查询redis和数据库
+    private final SingleFlight<String, List<DishVO>> singleFlight = new SingleFlight<>();
+    //后台刷新线程，队列满时拒绝（同一个key的刷新由下一次请求重新触发）
+    private final ThreadPoolExecutor refreshExecutor = new ThreadPoolExecutor(
+            1, 2, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(100),
+            runnable -> {
+                Thread thread = new Thread(runnable, "dish-cache-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(cacheProperties.getLocalMaxSize())
+                .expireAfterWrite(cacheProperties.getLocalTtl(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * 查询分类下的菜品，依次查询进程内缓存、Redis，都未命中时调用loader查询数据库并写入缓存
+     *
+     * @param categoryId
+     * @param loader
+     * @return
+     */
+    public List<DishVO> get(Long categoryId, Supplier<List<DishVO>> loader) {
+        String key = KEY_PREFIX + categoryId;
+        //查询进程内缓存，命中时无需网络请求和反序列化
+        List<DishVO> list = localCache.getIfPresent(key);
+        if (list != null) {
+            if (staleKeys.contains(key)) {
+                //旧数据，先返回旧数据，同时在后台刷新
+                refresh(key, loader);
+            }
+            return list;
+        }
+        //未命中，同一个key只有一个请求去加载，其他请求等待结果
+        return singleFlight.execute(key, () -> load(key, loader));
+    }
+
+    /**
+     * 在后台刷新key，已有刷新在等待或执行时不重复提交
+     * 刷新同样经过singleFlight，与同一个key的未命中加载合并为一次查询
+     *
+     * @param key
+     * @param loader
+     */
+    private void refresh(String key, Supplier<List<DishVO>> loader) {
+        if (!refreshingKeys.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    singleFlight.execute(key, () -> load(key, loader));
+                } catch (RuntimeException e) {
+                    log.warn("后台刷新菜品缓存失败：{}，{}", key, e.getMessage());
+                } finally {
+                    refreshingKeys.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshingKeys.remove(key);
+        }
+    }
+
+    /**
+     * 从redis加载数据，redis中无数据时查询数据库并存入redis，最后写入进程内缓存
+     *
+     * @param key
+     * @param loader
+     * @return
+     */
+    private List<DishVO> load(String key, Supplier<List<DishVO>> loader) {
+        //查询redis
+        List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
+        if (list == null) {
+            //redis中无数据，查询数据库并存入redis中
+            list = loader.get();
+            //先登记key再写入，保证redis中的菜品缓存都能被evictAll清理
+            stringRedisTemplate.opsForSet().add(KEY_REGISTRY, key);
+            //设置过期时间兜底，即使清理遗漏也不会一直返回旧数据
+            redisTemplate.opsForValue().set(key, list, cacheProperties.getRedisTtl(), TimeUnit.SECONDS);
+        }
+        localCache.put(key, list);
+        staleKeys.remove(key);
+        return list;
+    }
+
+    /**
+     * 清理指定分类的菜品缓存
+     *
+     * @param categoryId
+     */
+    public void evict(Long categoryId) {
+        String key = KEY_PREFIX + categoryId;
+        redisTemplate.delete(key);
+        publish(key);
+    }
+
+    /**
+     * 清理所有分类的菜品缓存
+     */
+    public void evictAll() {
+        //从登记集合中取出所有key，避免使用阻塞redis的keys命令
+        Set<String> keys = stringRedisTemplate.opsForSet().members(KEY_REGISTRY);
+        if (keys != null && !keys.isEmpty()) {
+            //不从集合中移除已删除的key：并发的load可能在删除之后重新写入同一个key，
+            //保留登记才能被下一次evictAll清理；集合大小只与分类数量有关
+            redisTemplate.delete(keys);
+        }
+        publish(EVICT_ALL);
+    }
+
+    /**
+     * 清理本节点的进程内缓存，并通知其他节点清理
+     *
+     * @param message 要清理的key，或EVICT_ALL
+     */
+    private void publish(String message) {
+        evictLocal(message);
+        stringRedisTemplate.convertAndSend(EVICT_CHANNEL, message);
+    }
+
+    /**
+     * 收到缓存清理通知
+     *
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到菜品缓存清理通知：{}", body);
+        evictLocal(body);
+    }
+
+    /**
+     * 清理进程内缓存
+     *
+     * @param message
+     */
+    private void evictLocal(String message) {
+        if (cacheProperties.isStaleWhileRevalidate()) {
+            //保留旧数据，标记为待刷新
+            if (EVICT_ALL.equals(message)) {
+                staleKeys.addAll(localCache.asMap().keySet());
+            } else if (localCache.getIfPresent(message) != null) {
+                staleKeys.add(message);
+            }
+            return;
+        }
+        if (EVICT_ALL.equals(message)) {
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidate(message);
+        }
+    }
+}
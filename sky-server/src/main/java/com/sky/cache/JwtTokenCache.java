@@ -0,0 +1,96 @@
+package com.sky.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.constant.MessageConstant;
+import com.sky.exception.UserNotLoginException;
+import com.sky.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已校验jwt令牌的缓存
+ * 令牌第一次校验通过后，以令牌的SHA-256摘要为key缓存解析出的id和过期时间，
+ * 之后同一令牌的请求无需再校验签名、解析json
+ */
+public class JwtTokenCache {
+
+    //缓存项的最长保留时间（分钟），令牌过期时间更早时以令牌为准
+    private static final long MAX_CACHE_MINUTES = 10;
+
+    //签名使用的Key，只在创建时生成一次
+    private final Key signingKey;
+    //令牌中存放id的字段名
+    private final String idClaim;
+    private final Cache<String, VerifiedToken> cache;
+
+    public JwtTokenCache(String secretKey, String idClaim, long maxSize) {
+        this.signingKey = JwtUtil.getSigningKey(secretKey);
+        this.idClaim = idClaim;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(MAX_CACHE_MINUTES, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * 校验令牌，返回令牌中的id
+     *
+     * @param token
+     * @return
+     * @throws RuntimeException 令牌无效或已过期
+     */
+    public Long verify(String token) {
+        String key = digest(token);
+        VerifiedToken verified = cache.getIfPresent(key);
+        if (verified == null) {
+            //第一次出现的令牌，校验签名并解析
+            Claims claims = JwtUtil.parseJWT(signingKey, token);
+            Long id = Long.valueOf(claims.get(idClaim).toString());
+            Date expiration = claims.getExpiration();
+            verified = new VerifiedToken(id, expiration == null ? Long.MAX_VALUE : expiration.getTime());
+            cache.put(key, verified);
+        } else if (verified.expireAt <= System.currentTimeMillis()) {
+            //缓存的令牌已过期
+            cache.invalidate(key);
+            throw new UserNotLoginException(MessageConstant.USER_NOT_LOGIN);
+        }
+        return verified.id;
+    }
+
+    /**
+     * 计算令牌的SHA-256摘要，缓存中不保存令牌原文
+     *
+     * @param token
+     * @return
+     */
+    private static String digest(String token) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(messageDigest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 已校验的令牌：id、过期时间
+     */
+    private static class VerifiedToken {
+        private final Long id;
+        private final long expireAt;
+
+        private VerifiedToken(Long id, long expireAt) {
+            this.id = id;
+            this.expireAt = expireAt;
+        }
+    }
+
+}
@@ -0,0 +1,224 @@
+package com.sky.cache;
+
+import com.sky.dto.OrderStatusCountDTO;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各状态订单数量计数器
+ * 全部订单、每天下单的订单各用一个Redis hash记录各状态的数量，订单状态变化时原子地调整计数，
+ * 查询时无需访问数据库；计数器不存在时从数据库重新统计，并定期与数据库对账
+ */
+@Component
+@Slf4j
+public class OrderStatusCounter {
+
+    //全部订单的计数器key
+    private static final String KEY_ALL = "order_status_count";
+    //每天订单的计数器key前缀，key=order_status_count_日期
+    private static final String KEY_DAY_PREFIX = "order_status_count_";
+    //每天订单的计数器保留天数
+    private static final long DAY_KEY_TTL_DAYS = 2;
+    //定期对账的锁，同一周期只由一个节点对账
+    private static final String RECONCILE_LOCK_KEY = "order_status_reconcile_lock";
+    //对账锁的超时时间（秒），对账完成后不释放，等待过期，各节点时钟略有偏差时同一周期也只对账一次；
+    //小于对账周期，下一周期可以由任意节点对账
+    private static final long RECONCILE_LOCK_SECONDS = 4 * 60;
+
+    //所有订单状态，对账时没有订单的状态记为0
+    private static final List<Integer> STATUSES = Arrays.asList(
+            Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED, Orders.CONFIRMED,
+            Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED, Orders.CANCELLED);
+
+    //计数器存在时才调整计数，计数器不存在时由下一次查询从数据库重新统计，避免只有部分状态的计数
+    //ARGV[1]：原状态，为空表示新订单；ARGV[2]：新状态；ARGV[3]：订单数量
+    private static final RedisScript<Long> TRANSITION_SCRIPT = new DefaultRedisScript<>(
+            "for _, key in ipairs(KEYS) do\n" +
+            "    if redis.call('exists', key) == 1 then\n" +
+            "        if ARGV[1] ~= '' then\n" +
+            "            redis.call('hincrby', key, ARGV[1], -tonumber(ARGV[3]))\n" +
+            "        end\n" +
+            "        redis.call('hincrby', key, ARGV[2], ARGV[3])\n" +
+            "    end\n" +
+            "end\n" +
+            "return 1",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderMapper orderMapper;
+
+    /**
+     * 新订单
+     *
+     * @param orders 需要包含下单时间
+     */
+    public void created(Orders orders) {
+        transition(orders.getOrderTime(), null, orders.getStatus());
+    }
+
+    /**
+     * 订单状态变化
+     * 在事务中时，事务提交后再调整计数
+     *
+     * @param orderTime 订单的下单时间
+     * @param from      原状态，为null表示新订单
+     * @param to        新状态
+     */
+    public void transition(LocalDateTime orderTime, Integer from, Integer to) {
+        transition(orderTime.toLocalDate(), from, to, 1);
+    }
+
+    /**
+     * 同一天下单的多个订单状态变化，用于批量修改订单状态
+     * 在事务中时，事务提交后再调整计数
+     *
+     * @param orderDate 订单的下单日期
+     * @param from      原状态，为null表示新订单
+     * @param to        新状态
+     * @param count     状态变化的订单数量
+     */
+    public void transition(LocalDate orderDate, Integer from, Integer to, long count) {
+        if (count <= 0 || (from != null && from.equals(to))) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doTransition(orderDate, from, to, count);
+                }
+            });
+        } else {
+            doTransition(orderDate, from, to, count);
+        }
+    }
+
+    /**
+     * 查询全部订单中各状态的订单数量
+     *
+     * @return 订单状态 -> 订单数量
+     */
+    public Map<Integer, Integer> countAll() {
+        Map<Integer, Integer> count = read(KEY_ALL);
+        return count != null ? count : reconcileAll();
+    }
+
+    /**
+     * 查询当天下单的订单中各状态的订单数量
+     *
+     * @return 订单状态 -> 订单数量
+     */
+    public Map<Integer, Integer> countToday() {
+        Map<Integer, Integer> count = read(KEY_DAY_PREFIX + LocalDate.now());
+        return count != null ? count : reconcileToday();
+    }
+
+    /**
+     * 定期与数据库对账，修正事务回滚、批量修改、并发修改等造成的计数偏差
+     * 多个节点同时触发时，只有获取到锁的节点执行对账，避免每个节点都对订单表做全表分组统计
+     * 对账从查询数据库到替换计数器期间提交的状态变化可能丢失或重复计入，
+     * 偏差最多保持到下一次对账，即不超过5分钟
+     */
+    @Scheduled(cron = "0 0/5 * * * ? ")  //每5分钟执行一次
+    public void reconcile() {
+        Boolean locked = stringRedisTemplate.opsForValue()
+                .setIfAbsent(RECONCILE_LOCK_KEY, LocalDateTime.now().toString(), RECONCILE_LOCK_SECONDS, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            log.debug("本周期已由其他节点对账订单状态计数，跳过");
+            return;
+        }
+        reconcileAll();
+        reconcileToday();
+    }
+
+    /**
+     * 根据数据库重新统计全部订单的计数
+     *
+     * @return
+     */
+    public Map<Integer, Integer> reconcileAll() {
+        return reset(KEY_ALL, orderMapper.countGroupByStatus(null), null);
+    }
+
+    /**
+     * 根据数据库重新统计当天订单的计数
+     *
+     * @return
+     */
+    public Map<Integer, Integer> reconcileToday() {
+        LocalDate today = LocalDate.now();
+        return reset(KEY_DAY_PREFIX + today, orderMapper.countGroupByStatus(today.atStartOfDay()), today);
+    }
+
+    private void doTransition(LocalDate orderDate, Integer from, Integer to, long count) {
+        try {
+            stringRedisTemplate.execute(TRANSITION_SCRIPT,
+                    Arrays.asList(KEY_ALL, KEY_DAY_PREFIX + orderDate),
+                    from == null ? "" : from.toString(), to.toString(), String.valueOf(count));
+        } catch (Exception e) {
+            //计数失败不影响业务，由对账修正
+            log.warn("调整订单状态计数失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 读取计数器
+     *
+     * @param key
+     * @return 计数器不存在时返回null
+     */
+    private Map<Integer, Integer> read(String key) {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
+        if (entries.isEmpty()) {
+            return null;
+        }
+        Map<Integer, Integer> count = new HashMap<>();
+        entries.forEach((status, value) -> count.put(Integer.valueOf(status.toString()), Integer.valueOf(value.toString())));
+        return count;
+    }
+
+    /**
+     * 用数据库的统计结果替换计数器，先写入临时key再重命名，读取方不会看到不完整的计数
+     *
+     * @param key
+     * @param list
+     * @param date 每天订单的计数器对应的日期，全部订单的计数器为null
+     * @return
+     */
+    private Map<Integer, Integer> reset(String key, List<OrderStatusCountDTO> list, LocalDate date) {
+        Map<Integer, Integer> count = new HashMap<>();
+        STATUSES.forEach(status -> count.put(status, 0));
+        list.forEach(dto -> count.put(dto.getStatus(), dto.getCount()));
+
+        Map<String, String> hash = new HashMap<>();
+        count.forEach((status, value) -> hash.put(status.toString(), value.toString()));
+        String tmpKey = key + "_tmp_" + UUID.randomUUID();
+        stringRedisTemplate.opsForHash().putAll(tmpKey, hash);
+        stringRedisTemplate.rename(tmpKey, key);
+        if (date != null) {
+            stringRedisTemplate.expire(key, DAY_KEY_TTL_DAYS, TimeUnit.DAYS);
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.sky.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.entity.ShoppingCart;
+import com.sky.properties.ShoppingCartProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于redis hash的购物车存储
+ * 每个用户两个hash，field为商品（菜品+口味 或 套餐）：
+ * shopping_cart_用户id 存放商品数量，加购时原子自增；
+ * shopping_cart_item_用户id 存放商品名称、图片、单价等信息，商品信息不存在时写入
+ * 每次写入都会刷新两个hash的过期时间，长期不操作的购物车自动删除
+ */
+@Component
+public class ShoppingCartRedisStore {
+
+    //商品数量hash的key前缀
+    public static final String NUMBER_KEY_PREFIX = "shopping_cart_";
+    //商品信息hash的key前缀
+    public static final String ITEM_KEY_PREFIX = "shopping_cart_item_";
+
+    //原子地增加商品数量、刷新过期时间，并返回商品信息是否已存在
+    //KEYS[1]：商品数量hash；KEYS[2]：商品信息hash；ARGV[1]：field；ARGV[2]：增加的数量；ARGV[3]：过期时间（秒）
+    private static final RedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "redis.call('expire', KEYS[1], ARGV[3])\n" +
+            "redis.call('expire', KEYS[2], ARGV[3])\n" +
+            "return redis.call('hexists', KEYS[2], ARGV[1])",
+            Long.class);
+
+    //写入商品信息并刷新过期时间，ARGV[3]为1时只在商品信息不存在时写入
+    //KEYS[1]：商品信息hash；ARGV[1]：field；ARGV[2]：商品信息；ARGV[3]：是否只在不存在时写入；ARGV[4]：过期时间（秒）
+    private static final RedisScript<Long> PUT_ITEM_SCRIPT = new DefaultRedisScript<>(
+            "if ARGV[3] == '1' then\n" +
+            "    redis.call('hsetnx', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "else\n" +
+            "    redis.call('hset', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "end\n" +
+            "redis.call('expire', KEYS[1], ARGV[4])\n" +
+            "return 1",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private ShoppingCartProperties shoppingCartProperties;
+
+    /**
+     * 将商品数量原子地增加delta
+     *
+     * @param userId
+     * @param shoppingCart 需要设置dishId、dishFlavor或setmealId
+     * @param delta
+     * @return 商品信息是否已存在，不存在时（首次加入，或之前写入商品信息失败）需要调用putItemIfAbsent写入
+     */
+    public boolean increment(Long userId, ShoppingCart shoppingCart, long delta) {
+        Long hasItem = stringRedisTemplate.execute(INCREMENT_SCRIPT,
+                Arrays.asList(NUMBER_KEY_PREFIX + userId, ITEM_KEY_PREFIX + userId),
+                field(shoppingCart), String.valueOf(delta), String.valueOf(shoppingCartProperties.getTtl()));
+        return hasItem != null && hasItem == 1;
+    }
+
+    /**
+     * 保存商品信息，已存在时覆盖
+     *
+     * @param userId
+     * @param shoppingCart
+     */
+    public void putItem(Long userId, ShoppingCart shoppingCart) {
+        putItem(userId, shoppingCart, false);
+    }
+
+    /**
+     * 商品信息不存在时保存商品信息，并发加购时只保留先写入的商品信息
+     *
+     * @param userId
+     * @param shoppingCart
+     */
+    public void putItemIfAbsent(Long userId, ShoppingCart shoppingCart) {
+        putItem(userId, shoppingCart, true);
+    }
+
+    private void putItem(Long userId, ShoppingCart shoppingCart, boolean ifAbsent) {
+        stringRedisTemplate.execute(PUT_ITEM_SCRIPT,
+                Collections.singletonList(ITEM_KEY_PREFIX + userId),
+                field(shoppingCart), JSON.toJSONString(shoppingCart), ifAbsent ? "1" : "0",
+                String.valueOf(shoppingCartProperties.getTtl()));
+    }
+
+    /**
+     * 查询用户购物车中的所有商品
+     *
+     * @param userId
+     * @return
+     */
+    public List<ShoppingCart> list(Long userId) {
+        Map<Object, Object> numberMap = stringRedisTemplate.opsForHash().entries(NUMBER_KEY_PREFIX + userId);
+        List<ShoppingCart> list = new ArrayList<>();
+        if (numberMap.isEmpty()) {
+            return list;
+        }
+        Map<Object, Object> itemMap = stringRedisTemplate.opsForHash().entries(ITEM_KEY_PREFIX + userId);
+        numberMap.forEach((field, number) -> {
+            Object item = itemMap.get(field);
+            if (item == null) {
+                //商品信息还未写入（并发的首次加购），跳过，下一次加购时补写
+                return;
+            }
+            ShoppingCart shoppingCart = JSON.parseObject(item.toString(), ShoppingCart.class);
+            shoppingCart.setUserId(userId);
+            shoppingCart.setNumber(Integer.valueOf(number.toString()));
+            list.add(shoppingCart);
+        });
+        //按加入购物车的时间排序
+        list.sort(Comparator.comparing(ShoppingCart::getCreateTime, Comparator.nullsLast(Comparator.naturalOrder())));
+        return list;
+    }
+
+    /**
+     * 清空用户购物车
+     *
+     * @param userId
+     */
+    public void clean(Long userId) {
+        stringRedisTemplate.delete(Arrays.asList(NUMBER_KEY_PREFIX + userId, ITEM_KEY_PREFIX + userId));
+    }
+
+    /**
+     * 商品在hash中的field：dish_菜品id_口味 或 setmeal_套餐id
+     *
+     * @param shoppingCart
+     * @return
+     */
+    private String field(ShoppingCart shoppingCart) {
+        if (shoppingCart.getDishId() != null) {
+            String dishFlavor = shoppingCart.getDishFlavor() == null ? "" : shoppingCart.getDishFlavor();
+            return "dish_" + shoppingCart.getDishId() + "_" + dishFlavor;
+        }
+        return "setmeal_" + shoppingCart.getSetmealId();
+    }
+}
@@ -0,0 +1,22 @@
+package com.sky.config;
+
+import com.sky.properties.HttpClientProperties;
+import com.sky.utils.HttpClientUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Http客户端的配置类
+ * 用于创建共用连接池的HttpClientUtil对象，应用关闭时关闭连接池
+ */
+@Configuration
+@Slf4j
+public class HttpClientConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public HttpClientUtil httpClientUtil(HttpClientProperties httpClientProperties) {
+        log.info("开始创建Http工具类对象：{}", httpClientProperties);
+        return new HttpClientUtil(httpClientProperties);
+    }
+}
@@ -0,0 +1,28 @@
+package com.sky.config;
+
+import com.sky.properties.OrderProperties;
+import com.sky.task.WorkerIdLease;
+import com.sky.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 订单相关的配置类
+ * 用于创建生成订单号的SnowflakeIdGenerator对象，机器id优先使用配置值，未配置时从Redis自动分配
+ */
+@Configuration
+@Slf4j
+public class OrderConfiguration {
+
+    @Bean
+    public SnowflakeIdGenerator orderNumberGenerator(OrderProperties orderProperties, WorkerIdLease workerIdLease) {
+        Long workerId = orderProperties.getWorkerId();
+        if (workerId == null) {
+            log.info("开始创建订单号生成器，机器id从Redis自动分配");
+            return workerIdLease.newGenerator();
+        }
+        log.info("开始创建订单号生成器，机器id：{}", workerId);
+        return new SnowflakeIdGenerator(workerId);
+    }
+}
@@ -1,11 +1,19 @@
 package com.sky.config;
 
+import com.sky.cache.CacheValueSerializer;
+import com.sky.cache.DishCache;
+import com.sky.properties.CacheProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 /**
@@ -16,16 +24,46 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 public class RedisConfiguration {
 
     @Bean
-    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory){
+    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory, RedisSerializer<Object> cacheValueSerializer){
         log.info("开始创建redis模板对象...");
         RedisTemplate redisTemplate = new RedisTemplate();
         //设置redis的连接工厂对象
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         //设置redis key的序列化器
         redisTemplate.setKeySerializer(new StringRedisSerializer());
+        //设置redis value的序列化器
+        redisTemplate.setValueSerializer(cacheValueSerializer);
         return redisTemplate;
     }
 
+    /**
+     * 缓存值的序列化器，redisTemplate和Spring Cache共用
+     * @param cacheProperties
+     * @return
+     */
+    @Bean
+    public RedisSerializer<Object> cacheValueSerializer(CacheProperties cacheProperties){
+        log.info("创建redis缓存值序列化器：{}，压缩阈值：{}", cacheProperties.getSerializer(), cacheProperties.getCompressThreshold());
+        RedisSerializer<Object> serializer;
+        if ("jdk".equals(cacheProperties.getSerializer())) {
+            serializer = new JdkSerializationRedisSerializer();
+        } else {
+            serializer = CacheValueSerializer.json();
+        }
+        return new CacheValueSerializer(serializer, cacheProperties.getCompressThreshold());
+    }
+
+    /**
+     * Spring Cache（@Cacheable）使用的redis缓存配置
+     * @param cacheValueSerializer
+     * @return
+     */
+    @Bean
+    public RedisCacheConfiguration redisCacheConfiguration(RedisSerializer<Object> cacheValueSerializer){
+        return RedisCacheConfiguration.defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(cacheValueSerializer));
+    }
+
     @Bean
     public RedisTemplate redisTemplate2(RedisConnectionFactory redisConnectionFactory){
         log.info("开始创建redis模板对象...");
@@ -38,4 +76,14 @@ public class RedisConfiguration {
         return redisTemplate;
     }
 
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory, DishCache dishCache){
+        log.info("开始创建redis消息监听容器...");
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        //订阅菜品缓存清理通知
+        container.addMessageListener(dishCache, new ChannelTopic(DishCache.EVICT_CHANNEL));
+        return container;
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.sky.controller.admin;
 
+import com.sky.cache.DishCache;
 import com.sky.dto.DishDTO;
 import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
@@ -11,11 +12,9 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
-import java.util.Set;
 
 /**
  * 菜品管理
@@ -29,7 +28,7 @@ public class DishController {
     @Autowired
     private DishService dishService;
     @Autowired
-    private RedisTemplate redisTemplate;
+    private DishCache dishCache;
 
     /**
      * 新增菜品
@@ -43,7 +42,7 @@ public class DishController {
         log.info("新增菜品：{}", dishDTO);
         dishService.saveWithFlavor(dishDTO);
         //清理缓存数据
-        cleanCache("dish_" + dishDTO.getCategoryId());
+        dishCache.evict(dishDTO.getCategoryId());
         return Result.success();
     }
 
@@ -72,7 +71,7 @@ public class DishController {
         dishService.deleteBatch(ids);
 
         //删除所有缓存数据
-        cleanCache("dish_*");
+        dishCache.evictAll();
 
         return Result.success();
     }
@@ -102,7 +101,7 @@ public class DishController {
         dishService.updateWithFlavor(dishDTO);
 
         //删除所有缓存数据
-        cleanCache("dish_*");
+        dishCache.evictAll();
 
         return Result.success();
     }
@@ -131,18 +130,8 @@ public class DishController {
         log.info("菜品启售停售：{}", status);
         dishService.startOrStop(id, status);
         //清理redis中的缓存
-        cleanCache("dish_*");
+        dishCache.evictAll();
         return Result.success();
     }
 
-    /**
-     * 清理redis中的缓存
-     * @param pattern
-     */
-    private void cleanCache(String pattern){
-        //查找所有key
-        Set keys = redisTemplate.keys(pattern);
-        redisTemplate.delete(keys);
-    }
-
 }
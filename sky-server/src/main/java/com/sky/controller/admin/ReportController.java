@@ -1,8 +1,11 @@
 package com.sky.controller.admin;
 
+import com.sky.dto.ReportDateRangeDTO;
 import com.sky.result.Result;
+import com.sky.service.ReportExportService;
 import com.sky.service.ReportService;
 import com.sky.vo.OrderReportVO;
+import com.sky.vo.ReportExportJobVO;
 import com.sky.vo.SalesTop10ReportVO;
 import com.sky.vo.TurnoverReportVO;
 import com.sky.vo.UserReportVO;
@@ -12,10 +15,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
@@ -27,6 +34,8 @@ public class ReportController {
 
     @Autowired
     private ReportService reportService;
+    @Autowired
+    private ReportExportService reportExportService;
 
     /**
      * 营业额统计
@@ -94,12 +103,60 @@ public class ReportController {
 
     /**
      * 导出运营数据报表
+     * @param begin 不传时默认为30天前
+     * @param end 不传时默认为昨天
      * @param response
      */
     @GetMapping("/export")
     @ApiOperation("导出运营数据报表")
-    public void export(HttpServletResponse response){
-        log.info("导出运营数据报表...");
-        reportService.exportBusinessData(response);
+    public void export(
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+            HttpServletResponse response) throws IOException {
+        log.info("导出运营数据报表：{}, {}", begin, end);
+        //先校验日期区间，不合法时还没有设置响应头，异常处理器可以正常返回错误信息
+        ReportDateRangeDTO range = reportService.checkExportDateRange(begin, end);
+        response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        response.setHeader("Content-Disposition", "attachment;filename=business_data.xlsx");
+        reportService.exportBusinessData(range.getBegin(), range.getEnd(), response.getOutputStream());
+    }
+
+    /**
+     * 提交运营数据报表导出任务
+     * @param begin 不传时默认为30天前
+     * @param end 不传时默认为昨天
+     * @return
+     */
+    @PostMapping("/exportJob")
+    @ApiOperation("提交运营数据报表导出任务")
+    public Result<ReportExportJobVO> submitExportJob(
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end) {
+        log.info("提交运营数据报表导出任务：{}, {}", begin, end);
+        return Result.success(reportExportService.submit(begin, end));
+    }
+
+    /**
+     * 查询运营数据报表导出任务
+     * @param id
+     * @return
+     */
+    @GetMapping("/exportJob/{id}")
+    @ApiOperation("查询运营数据报表导出任务")
+    public Result<ReportExportJobVO> getExportJob(@PathVariable String id) {
+        return Result.success(reportExportService.getById(id));
+    }
+
+    /**
+     * 下载运营数据报表导出任务生成的文件
+     * @param id
+     * @param request
+     * @param response
+     */
+    @GetMapping("/exportJob/{id}/download")
+    @ApiOperation("下载运营数据报表")
+    public void downloadExportJob(@PathVariable String id, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        log.info("下载运营数据报表：{}", id);
+        reportExportService.download(id, request, response);
     }
 }
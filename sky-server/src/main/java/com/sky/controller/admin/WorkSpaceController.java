@@ -37,8 +37,8 @@ public class WorkSpaceController {
     public Result<BusinessDataVO> businessData(){
         //获得当天的开始时间
         LocalDateTime begin = LocalDateTime.now().with(LocalTime.MIN);
-        //获得当天的结束时间
-        LocalDateTime end = LocalDateTime.now().with(LocalTime.MAX);
+        //获得次日的开始时间，查询区间为[begin, end)
+        LocalDateTime end = begin.plusDays(1);
 
         BusinessDataVO businessDataVO = workspaceService.getBusinessData(begin, end);
         return Result.success(businessDataVO);
@@ -4,6 +4,7 @@ import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.dto.OrdersPaymentDTO;
 import com.sky.dto.OrdersSubmitDTO;
 import com.sky.entity.Orders;
+import com.sky.handler.AsyncRequestHandler;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
@@ -15,6 +16,7 @@ import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 @RestController("userOrderController")
 @RequestMapping("/user/order")
@@ -24,6 +26,8 @@ public class OrderController {
 
     @Autowired
     private OrderService orderService;
+    @Autowired
+    private AsyncRequestHandler asyncRequestHandler;
 
     /**
      * 用户下单
@@ -32,10 +36,12 @@ public class OrderController {
      */
     @PostMapping("/submit")
     @ApiOperation("用户下单")
-    public Result<OrderSubmitVO> submit(@RequestBody OrdersSubmitDTO ordersSubmitDTO){
+    public DeferredResult<Result<OrderSubmitVO>> submit(@RequestBody OrdersSubmitDTO ordersSubmitDTO) throws Exception {
         log.info("用户下单：{}", ordersSubmitDTO);
-        OrderSubmitVO orderSubmitVO = orderService.submitOrder(ordersSubmitDTO);
-        return Result.success(orderSubmitVO);
+        return asyncRequestHandler.execute(() -> {
+            OrderSubmitVO orderSubmitVO = orderService.submitOrder(ordersSubmitDTO);
+            return Result.success(orderSubmitVO);
+        });
     }
 
     /**
@@ -46,14 +52,17 @@ public class OrderController {
      */
     @PutMapping("/payment")
     @ApiOperation("订单支付")
-    public Result<OrderPaymentVO> payment(@RequestBody OrdersPaymentDTO ordersPaymentDTO) throws Exception {
+    public DeferredResult<Result<OrderPaymentVO>> payment(@RequestBody OrdersPaymentDTO ordersPaymentDTO) throws Exception {
         log.info("订单支付：{}", ordersPaymentDTO);
-        OrderPaymentVO orderPaymentVO = orderService.payment(ordersPaymentDTO);
-        log.info("生成预支付交易单：{}", orderPaymentVO);
-        //模拟交易成功，修改数据库订单状态
-        orderService.paySuccess(ordersPaymentDTO.getOrderNumber());
-        log.info("模拟交易成功：{}", ordersPaymentDTO.getOrderNumber());
-        return Result.success(orderPaymentVO);
+        //需要调用微信支付接口，开启异步处理时不占用请求线程
+        return asyncRequestHandler.execute(() -> {
+            OrderPaymentVO orderPaymentVO = orderService.payment(ordersPaymentDTO);
+            log.info("生成预支付交易单：{}", orderPaymentVO);
+            //模拟交易成功，修改数据库订单状态（模拟支付没有微信支付交易号）
+            orderService.paySuccess(ordersPaymentDTO.getOrderNumber(), null);
+            log.info("模拟交易成功：{}", ordersPaymentDTO.getOrderNumber());
+            return Result.success(orderPaymentVO);
+        });
     }
 
     /**
@@ -65,9 +74,9 @@ public class OrderController {
      */
     @GetMapping("/historyOrders")
     @ApiOperation("查询历史订单")
-    public Result<PageResult> page(Integer page, Integer pageSize, Integer status){
-        log.info("查询历史订单：page={}, pageSize={}, status={}", page, pageSize, status);
-        PageResult pageResult = orderService.pageQuery4User(page, pageSize, status);
+    public Result<PageResult> page(Integer page, Integer pageSize, Integer status, String cursor){
+        log.info("查询历史订单：page={}, pageSize={}, status={}, cursor={}", page, pageSize, status, cursor);
+        PageResult pageResult = orderService.pageQuery4User(page, pageSize, status, cursor);
         return Result.success(pageResult);
     }
 
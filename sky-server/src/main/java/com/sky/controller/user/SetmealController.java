@@ -31,7 +31,7 @@ public class SetmealController {
      */
     @GetMapping("/list")
     @ApiOperation("根据分类id查询套餐")
-    @Cacheable(cacheNames = "setmealCache", key = "#categoryId")  //key=setmealCache::18
+    @Cacheable(cacheNames = "setmealCache", key = "#categoryId", sync = true)  //key=setmealCache::18，sync：缓存未命中时只有一个请求查询数据库
     public Result<List<Setmeal>> list(Long categoryId) {
         Setmeal setmeal = new Setmeal();
         setmeal.setCategoryId(categoryId);
@@ -3,6 +3,7 @@ package com.sky.controller.user;
 import com.sky.constant.JwtClaimsConstant;
 import com.sky.dto.UserLoginDTO;
 import com.sky.entity.User;
+import com.sky.handler.AsyncRequestHandler;
 import com.sky.properties.JwtProperties;
 import com.sky.result.Result;
 import com.sky.service.UserService;
@@ -16,6 +17,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.HashMap;
 
@@ -31,6 +33,9 @@ public class UserController {
     @Autowired
     private JwtProperties jwtProperties;
 
+    @Autowired
+    private AsyncRequestHandler asyncRequestHandler;
+
     /**
      * 微信登录
      *
@@ -39,22 +44,25 @@ public class UserController {
      */
     @PostMapping("/login")
     @ApiOperation("微信登录")
-    public Result<UserLoginVO> login(@RequestBody UserLoginDTO userLoginDTO) {
+    public DeferredResult<Result<UserLoginVO>> login(@RequestBody UserLoginDTO userLoginDTO) throws Exception {
         log.info("微信登录：{}", userLoginDTO);
-        User user = userService.wxLogin(userLoginDTO);
+        //需要调用微信接口获取openid，开启异步处理时不占用请求线程
+        return asyncRequestHandler.execute(() -> {
+            User user = userService.wxLogin(userLoginDTO);
 
-        //为微信用户生成jwt令牌
-        HashMap<String, Object> claims = new HashMap<>();
-        claims.put(JwtClaimsConstant.USER_ID, user.getId());
-        String token = JwtUtil.createJWT(jwtProperties.getUserSecretKey(), jwtProperties.getUserTtl(), claims);
+            //为微信用户生成jwt令牌
+            HashMap<String, Object> claims = new HashMap<>();
+            claims.put(JwtClaimsConstant.USER_ID, user.getId());
+            String token = JwtUtil.createJWT(jwtProperties.getUserSecretKey(), jwtProperties.getUserTtl(), claims);
 
-        //构建返回VO对象
-        UserLoginVO userLoginVO = UserLoginVO.builder()
-                .id(user.getId())
-                .openid(user.getOpenid())
-                .token(token)
-                .build();
+            //构建返回VO对象
+            UserLoginVO userLoginVO = UserLoginVO.builder()
+                    .id(user.getId())
+                    .openid(user.getOpenid())
+                    .token(token)
+                    .build();
 
-        return Result.success(userLoginVO);
+            return Result.success(userLoginVO);
+        });
     }
 }
@@ -0,0 +1,105 @@
+package com.sky.handler;
+
+import com.sky.constant.MessageConstant;
+import com.sky.context.BaseContext;
+import com.sky.exception.RequestBusyException;
+import com.sky.properties.AsyncRequestProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 耗时接口的异步处理器
+ * 开启后，微信登录、下单、支付等需要等待数据库和外部http调用的接口在专门的线程池中处理，
+ * 请求线程在提交后立即归还给Tomcat，高峰期慢接口不会占满Tomcat线程导致其他接口无法响应；
+ * 用户id通过BaseContext.wrap传递到处理线程
+ * 请求一旦开始处理就一直等到处理完成，不会在下单、支付提交之后给客户端返回超时；
+ * 只有排队超过queueTimeout仍未开始处理的请求才直接返回系统繁忙，此时业务逻辑没有执行，客户端可以安全重试
+ */
+@Component
+@Slf4j
+public class AsyncRequestHandler {
+
+    @Autowired
+    private AsyncRequestProperties asyncRequestProperties;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        if (!asyncRequestProperties.isEnabled()) {
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                asyncRequestProperties.getThreads(), asyncRequestProperties.getThreads(),
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(asyncRequestProperties.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "async-request-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        log.info("已开启耗时接口异步处理，线程数：{}", asyncRequestProperties.getThreads());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 处理请求
+     * 未开启异步处理时直接在请求线程中执行，异常照常抛出；返回的是已设置结果的DeferredResult，
+     * Spring MVC仍会开启servlet异步并再分发一次请求写出结果，令牌校验拦截器对再次分发直接放行；
+     * 开启时提交到线程池执行，异常交给全局异常处理器处理，线程池已满时退回请求线程中执行；
+     * 排队超时的请求不再执行，返回系统繁忙
+     *
+     * @param task 请求的处理逻辑
+     * @return
+     * @throws Exception
+     */
+    public <T> DeferredResult<T> execute(Callable<T> task) throws Exception {
+        if (executor == null) {
+            DeferredResult<T> result = new DeferredResult<>();
+            result.setResult(task.call());
+            return result;
+        }
+
+        //超时时间为0表示不超时，已开始处理的请求一直等到处理完成
+        DeferredResult<T> result = new DeferredResult<>(0L);
+        long submitTime = System.currentTimeMillis();
+        try {
+            executor.execute(BaseContext.wrap(() -> {
+                if (System.currentTimeMillis() - submitTime > asyncRequestProperties.getQueueTimeout()) {
+                    log.warn("异步请求排队超时，不再处理");
+                    result.setErrorResult(new RequestBusyException(MessageConstant.REQUEST_BUSY));
+                    return;
+                }
+                try {
+                    result.setResult(task.call());
+                } catch (Throwable e) {
+                    //结果不会超时，必须设置结果，否则请求一直挂起
+                    result.setErrorResult(e);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            log.warn("异步请求线程池已满，在请求线程中处理");
+            result.setResult(task.call());
+        }
+        return result;
+    }
+
+}
@@ -1,15 +1,17 @@
 package com.sky.interceptor;
 
+import com.sky.cache.JwtTokenCache;
 import com.sky.constant.JwtClaimsConstant;
 import com.sky.context.BaseContext;
 import com.sky.properties.JwtProperties;
-import com.sky.utils.JwtUtil;
-import io.jsonwebtoken.Claims;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.DispatcherType;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -23,6 +25,14 @@ public class JwtTokenAdminInterceptor implements HandlerInterceptor {
     @Autowired
     private JwtProperties jwtProperties;
 
+    //已校验令牌的缓存
+    private JwtTokenCache jwtTokenCache;
+
+    @PostConstruct
+    public void init() {
+        jwtTokenCache = new JwtTokenCache(jwtProperties.getAdminSecretKey(), JwtClaimsConstant.EMP_ID, jwtProperties.getTokenCacheSize());
+    }
+
     /**
      * 校验jwt
      *
@@ -38,20 +48,23 @@ public class JwtTokenAdminInterceptor implements HandlerInterceptor {
             //当前拦截到的不是动态方法，直接放行
             return true;
         }
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            //异步处理完成后的再次分发，首次分发时已校验过令牌，直接放行
+            return true;
+        }
 
         //1、从请求头中获取令牌
         String token = request.getHeader(jwtProperties.getAdminTokenName());
 
         //2、校验令牌
         try {
-            log.info("jwt校验:{}", token);
-            Claims claims = JwtUtil.parseJWT(jwtProperties.getAdminSecretKey(), token);
-            Long empId = Long.valueOf(claims.get(JwtClaimsConstant.EMP_ID).toString());
+            //同一令牌只在第一次请求时校验签名，之后从缓存中获取
+            Long empId = jwtTokenCache.verify(token);
 
             //将empId存放在Context(ThreadLocal)中，当前访问线程内可访问
             BaseContext.setCurrentId(empId);
 
-            log.info("当前员工id：{}", empId);
+            log.debug("当前员工id：{}", empId);
             //3、通过，放行
             return true;
         } catch (Exception ex) {
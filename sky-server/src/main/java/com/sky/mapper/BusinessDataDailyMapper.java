@@ -0,0 +1,34 @@
+package com.sky.mapper;
+
+import com.sky.entity.BusinessDataDaily;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Mapper
+public interface BusinessDataDailyMapper {
+
+    /**
+     * 批量插入每日营业数据，日期已存在时覆盖
+     * @param businessDataDailyList
+     */
+    void insertOrUpdateBatch(List<BusinessDataDaily> businessDataDailyList);
+
+    /**
+     * 查询日期区间（包含两端）内的每日营业数据
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select * from business_data_daily where business_date between #{begin} and #{end} order by business_date")
+    List<BusinessDataDaily> listByDate(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询已汇总的最后一个营业日
+     * @return
+     */
+    @Select("select max(business_date) from business_data_daily")
+    LocalDate getMaxBusinessDate();
+}
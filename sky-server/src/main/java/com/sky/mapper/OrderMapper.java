@@ -1,11 +1,14 @@
 package com.sky.mapper;
 
 import com.github.pagehelper.Page;
+import com.sky.dto.DailyOrderStatisticsDTO;
 import com.sky.dto.GoodsSalesDTO;
+import com.sky.dto.OrderStatusCountDTO;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.entity.Orders;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -33,6 +36,15 @@ public interface OrderMapper {
      */
     void update(Orders orders);
 
+    /**
+     * 支付成功，只修改仍处于待付款、未支付状态的订单，重复的支付回调不会重复修改
+     * @param orders 订单id、修改后的状态、支付状态、结账时间
+     * @return 实际修改的行数
+     */
+    @Update("update orders set status = #{orders.status}, pay_status = #{orders.payStatus}, checkout_time = #{orders.checkoutTime} " +
+            "where id = #{orders.id} and status = #{status} and pay_status = #{payStatus}")
+    int updatePaid(Orders orders, Integer status, Integer payStatus);
+
     /**
      * 分页查询
      * @param ordersPageQueryDTO
@@ -40,6 +52,20 @@ public interface OrderMapper {
      */
     Page<Orders> pageQuery(OrdersPageQueryDTO ordersPageQueryDTO);
 
+    /**
+     * 游标分页查询，按(order_time, id)倒序，从游标之后开始查询pageSize条
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    List<Orders> pageQueryByCursor(OrdersPageQueryDTO ordersPageQueryDTO);
+
+    /**
+     * 统计分页查询条件匹配的订单总数
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    Long countPageQuery(OrdersPageQueryDTO ordersPageQueryDTO);
+
 
     /**
      * 根据id查询Orders
@@ -57,13 +83,30 @@ public interface OrderMapper {
     Integer countStatus(Integer status);
 
     /**
-     * 根据状态和下单时间查询订单
+     * 按订单状态分组统计订单数量
+     * @param begin 下单时间下限，为null时统计全部订单
+     * @return
+     */
+    List<OrderStatusCountDTO> countGroupByStatus(LocalDateTime begin);
+
+    /**
+     * 根据状态和下单时间查询订单，按id分批查询，只查询id和下单时间
      * @param status
      * @param timeout
+     * @param limit 每批最多查询的条数
      * @return
      */
-    @Select("select * from orders where status=#{status} and order_time < #{timeout}")
-    List<Orders> getByStatusAndOrderTimeLT(Integer status, LocalDateTime timeout);
+    @Select("select id, order_time from orders where status=#{status} and order_time < #{timeout} order by id limit #{limit}")
+    List<Orders> getByStatusAndOrderTimeLT(Integer status, LocalDateTime timeout, Integer limit);
+
+    /**
+     * 批量修改订单状态，只修改仍处于指定状态的订单，避免覆盖并发的状态变化
+     * @param ids
+     * @param status 订单当前应处于的状态
+     * @param orders 修改后的状态、取消原因、取消时间、送达时间
+     * @return 实际修改的行数
+     */
+    int updateStatusByIds(List<Long> ids, Integer status, Orders orders);
 
     /**
      * 根据动态条件统计营业额
@@ -86,4 +129,21 @@ public interface OrderMapper {
      * @return
      */
     List<GoodsSalesDTO> getSalesTop(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 按天分组统计指定时间区间内的营业额、订单总数、有效订单数
+     * 没有订单的日期不会出现在结果中
+     * @param begin
+     * @param end
+     * @param status 有效订单的状态
+     * @return
+     */
+    List<DailyOrderStatisticsDTO> countGroupByDate(LocalDateTime begin, LocalDateTime end, Integer status);
+
+    /**
+     * 查询最早的下单时间
+     * @return
+     */
+    @Select("select min(order_time) from orders")
+    LocalDateTime getMinOrderTime();
 }
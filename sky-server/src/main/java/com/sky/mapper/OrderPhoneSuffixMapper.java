@@ -0,0 +1,16 @@
+package com.sky.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+
+import java.util.List;
+
+@Mapper
+public interface OrderPhoneSuffixMapper {
+
+    /**
+     * 批量插入订单手机号的所有后缀，用于手机号部分匹配
+     * @param orderId
+     * @param suffixes
+     */
+    void insertBatch(Long orderId, List<String> suffixes);
+}
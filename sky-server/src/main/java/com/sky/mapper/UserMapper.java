@@ -1,9 +1,12 @@
 package com.sky.mapper;
 
+import com.sky.dto.DailyUserStatisticsDTO;
 import com.sky.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 @Mapper
@@ -37,4 +40,13 @@ public interface UserMapper {
      * @return
      */
     Integer countByMap(Map totalMap);
+
+    /**
+     * 按天分组统计指定时间区间内的新增用户数
+     * 没有新增用户的日期不会出现在结果中
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyUserStatisticsDTO> countGroupByDate(LocalDateTime begin, LocalDateTime end);
 }
@@ -0,0 +1,45 @@
+package com.sky.service;
+
+import com.sky.entity.BusinessDataDaily;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface BusinessDataDailyService {
+
+    /**
+     * 根据订单表、用户表重新汇总日期区间（包含两端）内的每日营业数据
+     * @param begin
+     * @param end
+     */
+    void refresh(LocalDate begin, LocalDate end);
+
+    /**
+     * 订单状态变化后，若订单所在的营业日已结束，则重新汇总该日数据
+     * 当天的数据实时统计，不需要维护
+     * @param orderTime 订单的下单时间
+     */
+    void refreshIfClosed(LocalDateTime orderTime);
+
+    /**
+     * 补齐从最后一个已汇总日期到昨天之间缺失的每日营业数据
+     */
+    void backfill();
+
+    /**
+     * 查询日期区间（包含两端）内已结束营业日的每日营业数据，缺失的日期会先补齐
+     * @param begin
+     * @param end 不能晚于昨天
+     * @return 按日期升序，每天一条
+     */
+    List<BusinessDataDaily> list(LocalDate begin, LocalDate end);
+
+    /**
+     * 合计日期区间（包含两端）内已结束营业日的营业数据，缺失的日期会先补齐
+     * @param begin
+     * @param end 不能晚于昨天
+     * @return
+     */
+    BusinessDataDaily sum(LocalDate begin, LocalDate end);
+}
@@ -25,18 +25,21 @@ public interface OrderService {
 
     /**
      * 支付成功，修改订单状态
-     * @param outTradeNo
+     * 同一订单、同一交易的重复回调只处理一次
+     * @param outTradeNo 商户订单号
+     * @param transactionId 微信支付交易号，模拟支付时为null
      */
-    void paySuccess(String outTradeNo);
+    void paySuccess(String outTradeNo, String transactionId);
 
     /**
      * 查询历史订单
      * @param page
      * @param pageSize
      * @param status
+     * @param cursor 游标分页时上一页返回的游标，为null时按页码分页
      * @return
      */
-    PageResult pageQuery4User(Integer page, Integer pageSize, Integer status);
+    PageResult pageQuery4User(Integer page, Integer pageSize, Integer status, String cursor);
 
     /**
      * 查询订单详细信息
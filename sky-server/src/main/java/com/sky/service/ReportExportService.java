@@ -0,0 +1,34 @@
+package com.sky.service;
+
+import com.sky.vo.ReportExportJobVO;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDate;
+
+public interface ReportExportService {
+
+    /**
+     * 提交运营数据报表导出任务，有效期内相同日期区间的任务直接复用
+     * @param begin 为null时默认为30天前
+     * @param end 为null时默认为昨天
+     * @return
+     */
+    ReportExportJobVO submit(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询导出任务
+     * @param id
+     * @return
+     */
+    ReportExportJobVO getById(String id);
+
+    /**
+     * 下载导出任务生成的报表文件
+     * @param id
+     * @param request
+     * @param response
+     */
+    void download(String id, HttpServletRequest request, HttpServletResponse response) throws IOException;
+}
@@ -1,11 +1,12 @@
 package com.sky.service;
 
+import com.sky.dto.ReportDateRangeDTO;
 import com.sky.vo.OrderReportVO;
 import com.sky.vo.SalesTop10ReportVO;
 import com.sky.vo.TurnoverReportVO;
 import com.sky.vo.UserReportVO;
 
-import javax.servlet.http.HttpServletResponse;
+import java.io.OutputStream;
 import java.time.LocalDate;
 
 public interface ReportService {
@@ -43,8 +44,18 @@ public interface ReportService {
     SalesTop10ReportVO getTop10(LocalDate begin, LocalDate end);
 
     /**
-     * 导出运营数据报表
-     * @param response
+     * 补全并校验运营数据报表的导出日期区间，不合法时抛出ReportBusinessException
+     * @param begin 为null时默认为30天前
+     * @param end 为null时默认为昨天
+     * @return
+     */
+    ReportDateRangeDTO checkExportDateRange(LocalDate begin, LocalDate end);
+
+    /**
+     * 导出日期区间（包含两端）的运营数据报表
+     * @param begin 为null时默认为30天前
+     * @param end 为null时默认为昨天
+     * @param outputStream
      */
-    void exportBusinessData(HttpServletResponse response);
+    void exportBusinessData(LocalDate begin, LocalDate end, OutputStream outputStream);
 }
\ No newline at end of file
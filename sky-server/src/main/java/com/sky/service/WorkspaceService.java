@@ -9,7 +9,7 @@ import java.time.LocalDateTime;
 public interface WorkspaceService {
 
     /**
-     * 根据时间段统计营业数据
+     * 根据时间段统计营业数据，时间段为[begin, end)
      * @param begin
      * @param end
      * @return
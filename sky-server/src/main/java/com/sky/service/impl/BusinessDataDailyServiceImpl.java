@@ -0,0 +1,179 @@
+package com.sky.service.impl;
+
+import com.sky.dto.DailyOrderStatisticsDTO;
+import com.sky.dto.DailyUserStatisticsDTO;
+import com.sky.entity.BusinessDataDaily;
+import com.sky.entity.Orders;
+import com.sky.mapper.BusinessDataDailyMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import com.sky.service.BusinessDataDailyService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class BusinessDataDailyServiceImpl implements BusinessDataDailyService {
+
+    //每次汇总的最大天数，避免补齐历史数据时单条SQL过大
+    private static final int REFRESH_BATCH_DAYS = 31;
+
+    @Autowired
+    private BusinessDataDailyMapper businessDataDailyMapper;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private UserMapper userMapper;
+
+    /**
+     * 根据订单表、用户表重新汇总日期区间（包含两端）内的每日营业数据
+     *
+     * @param begin
+     * @param end
+     */
+    @Override
+    public void refresh(LocalDate begin, LocalDate end) {
+        LocalDate batchBegin = begin;
+        while (!batchBegin.isAfter(end)) {
+            LocalDate batchEnd = batchBegin.plusDays(REFRESH_BATCH_DAYS - 1);
+            if (batchEnd.isAfter(end)) {
+                batchEnd = end;
+            }
+            refreshBatch(batchBegin, batchEnd);
+            batchBegin = batchEnd.plusDays(1);
+        }
+    }
+
+    /**
+     * 汇总一批日期的营业数据：订单、用户各一次分组查询，没有数据的日期补0
+     *
+     * @param begin
+     * @param end
+     */
+    private void refreshBatch(LocalDate begin, LocalDate end) {
+        LocalDateTime beginDateTime = LocalDateTime.of(begin, LocalTime.MIN);
+        LocalDateTime endDateTime = LocalDateTime.of(end.plusDays(1), LocalTime.MIN);
+
+        Map<LocalDate, DailyOrderStatisticsDTO> orderMap = orderMapper
+                .countGroupByDate(beginDateTime, endDateTime, Orders.COMPLETED).stream()
+                .collect(Collectors.toMap(DailyOrderStatisticsDTO::getOrderDate, statistics -> statistics));
+        Map<LocalDate, Integer> userMap = userMapper
+                .countGroupByDate(beginDateTime, endDateTime).stream()
+                .collect(Collectors.toMap(DailyUserStatisticsDTO::getCreateDate, DailyUserStatisticsDTO::getNewUsers));
+
+        LocalDateTime now = LocalDateTime.now();
+        List<BusinessDataDaily> businessDataDailyList = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DailyOrderStatisticsDTO orderStatistics = orderMap.get(date);
+            BusinessDataDaily businessDataDaily = BusinessDataDaily.builder()
+                    .businessDate(date)
+                    .turnover(orderStatistics == null ? BigDecimal.ZERO : BigDecimal.valueOf(orderStatistics.getTurnover()))
+                    .totalOrderCount(orderStatistics == null ? 0 : orderStatistics.getTotalOrderCount())
+                    .validOrderCount(orderStatistics == null ? 0 : orderStatistics.getValidOrderCount())
+                    .newUsers(userMap.getOrDefault(date, 0))
+                    .updateTime(now)
+                    .build();
+            businessDataDailyList.add(businessDataDaily);
+        }
+        businessDataDailyMapper.insertOrUpdateBatch(businessDataDailyList);
+        log.info("汇总每日营业数据：{} 至 {}", begin, end);
+    }
+
+    /**
+     * 订单状态变化后，若订单所在的营业日已结束，则重新汇总该日数据
+     *
+     * @param orderTime 订单的下单时间
+     */
+    @Override
+    public void refreshIfClosed(LocalDateTime orderTime) {
+        if (orderTime == null) {
+            return;
+        }
+        LocalDate date = orderTime.toLocalDate();
+        if (date.isBefore(LocalDate.now())) {
+            refresh(date, date);
+        }
+    }
+
+    /**
+     * 补齐从最后一个已汇总日期到昨天之间缺失的每日营业数据
+     */
+    @Override
+    public void backfill() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        LocalDate begin;
+        LocalDate maxBusinessDate = businessDataDailyMapper.getMaxBusinessDate();
+        if (maxBusinessDate != null) {
+            //从最后一个已汇总日期开始，该日可能在汇总之后仍有订单状态变化
+            begin = maxBusinessDate;
+        } else {
+            //首次汇总，从最早的订单开始
+            LocalDateTime minOrderTime = orderMapper.getMinOrderTime();
+            if (minOrderTime == null) {
+                return;
+            }
+            begin = minOrderTime.toLocalDate();
+        }
+        if (begin.isAfter(yesterday)) {
+            return;
+        }
+        refresh(begin, yesterday);
+    }
+
+    /**
+     * 查询日期区间（包含两端）内已结束营业日的每日营业数据，缺失的日期会先补齐
+     *
+     * @param begin
+     * @param end 不能晚于昨天
+     * @return
+     */
+    @Override
+    public List<BusinessDataDaily> list(LocalDate begin, LocalDate end) {
+        List<BusinessDataDaily> list = businessDataDailyMapper.listByDate(begin, end);
+        long days = ChronoUnit.DAYS.between(begin, end) + 1;
+        if (list.size() < days) {
+            //存在未汇总的日期，补齐后重新查询
+            refresh(begin, end);
+            list = businessDataDailyMapper.listByDate(begin, end);
+        }
+        return list;
+    }
+
+    /**
+     * 合计日期区间（包含两端）内已结束营业日的营业数据，缺失的日期会先补齐
+     *
+     * @param begin
+     * @param end 不能晚于昨天
+     * @return
+     */
+    @Override
+    public BusinessDataDaily sum(LocalDate begin, LocalDate end) {
+        BigDecimal turnover = BigDecimal.ZERO;
+        int totalOrderCount = 0;
+        int validOrderCount = 0;
+        int newUsers = 0;
+        for (BusinessDataDaily businessDataDaily : list(begin, end)) {
+            turnover = turnover.add(businessDataDaily.getTurnover());
+            totalOrderCount += businessDataDaily.getTotalOrderCount();
+            validOrderCount += businessDataDaily.getValidOrderCount();
+            newUsers += businessDataDaily.getNewUsers();
+        }
+        return BusinessDataDaily.builder()
+                .turnover(turnover)
+                .totalOrderCount(totalOrderCount)
+                .validOrderCount(validOrderCount)
+                .newUsers(newUsers)
+                .build();
+    }
+}
@@ -4,6 +4,7 @@ import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.cache.OrderStatusCounter;
 import com.sky.constant.MessageConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.*;
@@ -12,21 +13,29 @@ import com.sky.exception.AddressBookBusinessException;
 import com.sky.exception.OrderBusinessException;
 import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.*;
+import com.sky.properties.OrderProperties;
 import com.sky.result.PageResult;
+import com.sky.service.BusinessDataDailyService;
 import com.sky.service.OrderService;
+import com.sky.service.ShoppingCartService;
+import com.sky.utils.SnowflakeIdGenerator;
 import com.sky.utils.WeChatPayUtil;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
+import com.sky.task.OrderTimeoutQueue;
 import com.sky.websocket.WebSocketServer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -34,11 +43,22 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class OrderServiceImpl implements OrderService {
 
+    //游标中下单时间和订单id的分隔符
+    private static final String CURSOR_SEPARATOR = "_";
+    //游标分页每页条数的上限
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+    //已处理的支付回调的key前缀，key=pay_notify_微信支付交易号
+    private static final String PAY_NOTIFY_KEY_PREFIX = "pay_notify_";
+    //支付回调处理记录的保留时间（小时），微信在24小时内重试回调
+    private static final long PAY_NOTIFY_TTL_HOURS = 48;
+
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
@@ -46,13 +66,27 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private AddressBookMapper addressBookMapper;
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private ShoppingCartService shoppingCartService;
     @Autowired
     private WeChatPayUtil weChatPayUtil;
     @Autowired
     private UserMapper userMapper;
     @Autowired
     private WebSocketServer webSocketServer;
+    @Autowired
+    private BusinessDataDailyService businessDataDailyService;
+    @Autowired
+    private OrderTimeoutQueue orderTimeoutQueue;
+    @Autowired
+    private SnowflakeIdGenerator orderNumberGenerator;
+    @Autowired
+    private OrderProperties orderProperties;
+    @Autowired
+    private OrderPhoneSuffixMapper orderPhoneSuffixMapper;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
 
     /**
      * 用户下单
@@ -71,10 +105,7 @@ public class OrderServiceImpl implements OrderService {
         }
 
         //判断购物车是否为空
-        ShoppingCart shoppingCart = ShoppingCart.builder()
-                .userId(BaseContext.getCurrentId())
-                .build();
-        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(shoppingCart);
+        List<ShoppingCart> shoppingCartList = shoppingCartService.showShoppingCart();
         if (shoppingCartList == null || shoppingCartList.size() == 0) {
             //抛出业务异常
             throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_IS_NULL);
@@ -86,11 +117,18 @@ public class OrderServiceImpl implements OrderService {
         orders.setOrderTime(LocalDateTime.now());  //设置订单创建时间
         orders.setPayStatus(Orders.UN_PAID);  //设置订单支付状态（未支付）
         orders.setStatus(Orders.PENDING_PAYMENT); //设置订单状态（未付款）
-        orders.setNumber(String.valueOf(System.currentTimeMillis()));  //设用当前系统时间作为订单号
+        orders.setNumber(String.valueOf(nextOrderNumber()));  //生成唯一的订单号
         orders.setPhone(addressBook.getPhone());  //设置手机号码
         orders.setConsignee(addressBook.getConsignee()); //设置收货人
         orders.setUserId(BaseContext.getCurrentId());  //设置下单人的id
         orderMapper.insert(orders);
+        orderStatusCounter.created(orders);
+        //登记订单超时时间，到期未支付自动取消
+        orderTimeoutQueue.add(orders.getId(), orders.getOrderTime());
+        //按手机号部分匹配搜索时，保存手机号的所有后缀
+        if (orderProperties.isPhoneSuffixSearch()) {
+            savePhoneSuffixes(orders.getId(), orders.getPhone());
+        }
 
         //往order_detail表插入n条数据
         List<OrderDetail> orderDetailList = new ArrayList<>();
@@ -103,7 +141,7 @@ public class OrderServiceImpl implements OrderService {
         orderDetailMapper.insertBatch(orderDetailList);
 
         //清空当前用户的购物车
-        shoppingCartMapper.deleteByUserId(BaseContext.getCurrentId());
+        shoppingCartService.cleanShoppingCart();
 
         //封装返回对象VO
         OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
@@ -150,13 +188,26 @@ public class OrderServiceImpl implements OrderService {
 
     /**
      * 支付成功，修改订单状态
+     * 已处理过的微信支付交易号直接返回；订单只在待付款、未支付时修改，
+     * 修改成功后才调整状态计数，并在事务提交后推送来单提醒
      *
      * @param outTradeNo
+     * @param transactionId
      */
-    public void paySuccess(String outTradeNo) {
+    @Transactional
+    public void paySuccess(String outTradeNo, String transactionId) {
+        //微信重复回调同一交易时，只查询一次Redis
+        if (isPayNotifyProcessed(transactionId)) {
+            log.info("支付回调已处理，忽略重复回调：{}，{}", outTradeNo, transactionId);
+            return;
+        }
 
         // 根据订单号查询订单
         Orders ordersDB = orderMapper.getByNumber(outTradeNo);
+        if (ordersDB == null) {
+            log.warn("支付回调的订单不存在：{}，{}", outTradeNo, transactionId);
+            return;
+        }
 
         Orders orders = Orders.builder()
                 .id(ordersDB.getId())
@@ -164,7 +215,18 @@ public class OrderServiceImpl implements OrderService {
                 .payStatus(Orders.PAID)
                 .checkoutTime(LocalDateTime.now())
                 .build();
-        orderMapper.update(orders);
+        int updated = orderMapper.updatePaid(orders, Orders.PENDING_PAYMENT, Orders.UN_PAID);
+        if (updated == 0) {
+            //ordersDB是修改前查询的，订单可能在查询之后才被取消（超时、用户取消），
+            //因此不根据ordersDB的状态判断，直接尝试已取消未支付订单的退款
+            if (!refundCancelledOrder(ordersDB, transactionId)) {
+                //订单已支付或已退款
+                log.warn("订单不是待付款状态，不修改订单状态：{}，{}", outTradeNo, transactionId);
+            }
+            markPayNotifyProcessed(transactionId);
+            return;
+        }
+        orderStatusCounter.transition(ordersDB.getOrderTime(), Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED);
 
         //通过webSocket向服务端后台推送信息 type orderId content
         //封装推送信息
@@ -174,8 +236,80 @@ public class OrderServiceImpl implements OrderService {
         map.put("content", "订单号：" + outTradeNo);
         //转为Json字符串
         String json = JSON.toJSONString(map);
-        //推送
-        webSocketServer.sendToAllClient(json);
+        //事务提交后再记录交易号、推送，推送只放入发送队列，不阻塞回调
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                markPayNotifyProcessed(transactionId);
+                webSocketServer.sendToAllClient(json);
+            }
+        });
+    }
+
+    /**
+     * 已取消的订单收到支付成功回调时退款，并记录错误日志告警以便人工核对
+     * 通过条件修改保证同一订单只退款一次
+     *
+     * @param ordersDB
+     * @param transactionId
+     * @return 订单是否为已取消未支付，并已发起退款
+     */
+    private boolean refundCancelledOrder(Orders ordersDB, String transactionId) {
+        Orders orders = Orders.builder()
+                .id(ordersDB.getId())
+                .status(Orders.CANCELLED)
+                .payStatus(Orders.REFUND)
+                .checkoutTime(LocalDateTime.now())
+                .build();
+        if (orderMapper.updatePaid(orders, Orders.CANCELLED, Orders.UN_PAID) == 0) {
+            return false;
+        }
+        log.error("订单已取消但收到支付成功回调，发起退款：{}，{}，金额：{}",
+                ordersDB.getNumber(), transactionId, ordersDB.getAmount());
+        //调用微信支付退款接口
+        //跳过退款
+//        weChatPayUtil.refund(
+//                ordersDB.getNumber(),  //商户订单号
+//                ordersDB.getNumber(),  //商户退款单号
+//                ordersDB.getAmount(),  //退款金额
+//                ordersDB.getAmount()  //原订单金额
+//        );
+        return true;
+    }
+
+    /**
+     * 微信支付交易号是否已处理，Redis不可用时由订单状态的条件修改保证幂等
+     *
+     * @param transactionId
+     * @return
+     */
+    private boolean isPayNotifyProcessed(String transactionId) {
+        if (transactionId == null) {
+            return false;
+        }
+        try {
+            return Boolean.TRUE.equals(stringRedisTemplate.hasKey(PAY_NOTIFY_KEY_PREFIX + transactionId));
+        } catch (Exception e) {
+            log.warn("查询支付回调处理记录失败：{}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 记录已处理的微信支付交易号，保留时间覆盖微信的回调重试周期
+     *
+     * @param transactionId
+     */
+    private void markPayNotifyProcessed(String transactionId) {
+        if (transactionId == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForValue().set(PAY_NOTIFY_KEY_PREFIX + transactionId, "1",
+                    PAY_NOTIFY_TTL_HOURS, TimeUnit.HOURS);
+        } catch (Exception e) {
+            log.warn("记录支付回调处理记录失败：{}", e.getMessage());
+        }
     }
 
     /**
@@ -184,40 +318,41 @@ public class OrderServiceImpl implements OrderService {
      * @param page
      * @param pageSize
      * @param status
+     * @param cursor
      * @return
      */
     @Override
-    public PageResult pageQuery4User(Integer page, Integer pageSize, Integer status) {
-        PageHelper.startPage(page, pageSize);
+    public PageResult pageQuery4User(Integer page, Integer pageSize, Integer status, String cursor) {
         //条件分页查询
         //构建DTO对象
         OrdersPageQueryDTO ordersPageQueryDTO = OrdersPageQueryDTO.builder()
+                .page(page == null ? 1 : page)
+                .pageSize(pageSize)
                 .userId(BaseContext.getCurrentId())
                 .status(status)
+                .cursor(cursor)
                 .build();
         //查询
-        Page<Orders> ordersPage = orderMapper.pageQuery(ordersPageQueryDTO);
+        PageResult pageResult = queryOrders(ordersPageQueryDTO);
+        List<Orders> ordersPage = pageResult.getRecords();
         //构建返回VO对象
         List<OrderVO> list = new ArrayList<>();
         //查询所有的历史订单明细
-        if (ordersPage != null && ordersPage.size() > 0) {
+        if (ordersPage.size() > 0) {
+            //一次查询出当前页所有订单的明细
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(ordersPage);
             for (Orders orders : ordersPage) {
-                //查询每个订单的详细信息
-                List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
                 OrderVO orderVO = new OrderVO();
                 //将order信息拷贝给VO对象
-//                log.info("copyProperties前：orders={}", orders);
-//                log.info("copyProperties前：orderVO={}", orderVO);
                 BeanUtils.copyProperties(orders, orderVO);
-//                log.info("copyProperties后：orders={}", orders);
-//                log.info("copyProperties后：orderVO={}", orderVO);
                 //将订单详细信息放进OrderVO中
-                orderVO.setOrderDetailList(orderDetailList);
+                orderVO.setOrderDetailList(orderDetailMap.getOrDefault(orders.getId(), new ArrayList<>()));
                 //将构建好的VO对象放到列表中
                 list.add(orderVO);
             }
         }
-        return new PageResult(ordersPage.getTotal(), list);
+        pageResult.setRecords(list);
+        return pageResult;
     }
 
     /**
@@ -282,6 +417,7 @@ public class OrderServiceImpl implements OrderService {
         orders.setCancelReason("用户取消");
         orders.setCancelTime(LocalDateTime.now());
         orderMapper.update(orders);
+        orderStatusCounter.transition(ordersDB.getOrderTime(), ordersDB.getStatus(), Orders.CANCELLED);
     }
 
     /**
@@ -308,7 +444,7 @@ public class OrderServiceImpl implements OrderService {
         });
         //插入数据库
         log.info("购物车内容：{}", shoppingCartList);
-        shoppingCartMapper.insertBatch(shoppingCartList);
+        shoppingCartService.addBatch(shoppingCartList);
 
     }
 
@@ -320,35 +456,129 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public PageResult conditionSearch(OrdersPageQueryDTO ordersPageQueryDTO) {
-        //开启分页
-        PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize());
-        //执行条件查询
-        Page<Orders> ordersList = orderMapper.pageQuery(ordersPageQueryDTO);
+        //执行条件查询，订单号、手机号按配置的方式搜索
+        ordersPageQueryDTO.setSearchMode(orderProperties.getSearchMode());
+        PageResult pageResult = queryOrders(ordersPageQueryDTO);
+        List<Orders> ordersList = pageResult.getRecords();
 
         //创建返回VO对象列表
         List<OrderVO> orderVOList = new ArrayList<>();
+        //一次查询出当前页所有订单的明细
+        Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(ordersList);
         ordersList.forEach(orders -> {
             //将Orders对象转换为VO对象
             OrderVO orderVO = new OrderVO();
             BeanUtils.copyProperties(orders, orderVO);
-            //查询关联菜品、套餐名称，并拼接成字符串
-            List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
-            String dishesName = new String();
+            //拼接关联菜品、套餐名称和数量，例如：宫保鸡丁*1, 米饭*2
+            List<OrderDetail> orderDetailList = orderDetailMap.getOrDefault(orders.getId(), new ArrayList<>());
+            StringBuilder dishesName = new StringBuilder();
             for (OrderDetail orderDetail : orderDetailList) {
-                dishesName += orderDetail.getName();  //拼接名称
-                dishesName += "*";
-                dishesName += orderDetail.getNumber().toString();  //拼接数量
-                dishesName += ", ";
+                if (dishesName.length() > 0) {
+                    dishesName.append(", ");
+                }
+                dishesName.append(orderDetail.getName()).append("*").append(orderDetail.getNumber());
             }
-            dishesName = dishesName.substring(0, dishesName.length() - 2);  //去掉最后的“, "
             //设置菜品名称
-            orderVO.setOrderDishes(dishesName);
+            orderVO.setOrderDishes(dishesName.toString());
 
             //放入list中
             orderVOList.add(orderVO);
         });
 
-        return new PageResult(ordersList.getTotal(), orderVOList);
+        pageResult.setRecords(orderVOList);
+        return pageResult;
+    }
+
+    /**
+     * 分页查询订单
+     * 请求中带有游标时按(order_time, id)定位下一页，不使用offset，默认不统计总数；否则按页码分页
+     *
+     * @param ordersPageQueryDTO
+     * @return records为当前页的Orders，游标分页时cursor为下一页的游标
+     */
+    private PageResult queryOrders(OrdersPageQueryDTO ordersPageQueryDTO) {
+        if (ordersPageQueryDTO.getCursor() == null) {
+            //开启分页
+            PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize());
+            Page<Orders> ordersPage = orderMapper.pageQuery(ordersPageQueryDTO);
+            return new PageResult(ordersPage.getTotal(), ordersPage);
+        }
+
+        //游标分页必须传每页条数，且不超过上限
+        int pageSize = ordersPageQueryDTO.getPageSize();
+        if (pageSize < 1 || pageSize > MAX_CURSOR_PAGE_SIZE) {
+            throw new OrderBusinessException(MessageConstant.ORDER_PAGE_SIZE_ERROR);
+        }
+
+        //解析游标：下单时间_订单id，空字符串表示第一页
+        String cursor = ordersPageQueryDTO.getCursor();
+        if (!cursor.isEmpty()) {
+            int index = cursor.lastIndexOf(CURSOR_SEPARATOR);
+            try {
+                ordersPageQueryDTO.setCursorTime(LocalDateTime.parse(cursor.substring(0, index)));
+                ordersPageQueryDTO.setCursorId(Long.valueOf(cursor.substring(index + 1)));
+            } catch (RuntimeException e) {
+                throw new OrderBusinessException(MessageConstant.ORDER_CURSOR_ERROR);
+            }
+        }
+
+        List<Orders> ordersList = orderMapper.pageQueryByCursor(ordersPageQueryDTO);
+        //只有客户端需要时才统计总数，-1表示未统计
+        long total = Boolean.TRUE.equals(ordersPageQueryDTO.getWithTotal())
+                ? orderMapper.countPageQuery(ordersPageQueryDTO) : -1;
+
+        PageResult pageResult = new PageResult(total, ordersList);
+        if (!ordersList.isEmpty() && ordersList.size() == pageSize) {
+            Orders last = ordersList.get(ordersList.size() - 1);
+            pageResult.setCursor(last.getOrderTime() + CURSOR_SEPARATOR + last.getId());
+        }
+        return pageResult;
+    }
+
+    /**
+     * 生成订单号，机器id租约丢失、暂停生成订单号期间返回系统繁忙
+     *
+     * @return
+     */
+    private long nextOrderNumber() {
+        try {
+            return orderNumberGenerator.nextId();
+        } catch (IllegalStateException e) {
+            log.error("生成订单号失败：{}", e.getMessage());
+            throw new OrderBusinessException(MessageConstant.REQUEST_BUSY);
+        }
+    }
+
+    /**
+     * 保存订单手机号的所有后缀，手机号的部分匹配转换为后缀的前缀匹配
+     *
+     * @param orderId
+     * @param phone
+     */
+    private void savePhoneSuffixes(Long orderId, String phone) {
+        if (phone == null || phone.isEmpty()) {
+            return;
+        }
+        List<String> suffixes = new ArrayList<>();
+        for (int i = 0; i < phone.length(); i++) {
+            suffixes.add(phone.substring(i));
+        }
+        orderPhoneSuffixMapper.insertBatch(orderId, suffixes);
+    }
+
+    /**
+     * 批量查询订单明细，并按订单id分组
+     *
+     * @param ordersList
+     * @return key为订单id，value为该订单的明细
+     */
+    private Map<Long, List<OrderDetail>> getOrderDetailMap(List<Orders> ordersList) {
+        if (ordersList == null || ordersList.isEmpty()) {
+            return new HashMap<>();
+        }
+        List<Long> orderIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        return orderDetailMapper.getByOrderIds(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderDetail::getOrderId));
     }
 
     /**
@@ -358,10 +588,11 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public OrderStatisticsVO statistics() {
-        //查询待接单、待派送、派送中订单数量
-        Integer toBeConfirmedCount = orderMapper.countStatus(Orders.TO_BE_CONFIRMED);
-        Integer confirmedCount = orderMapper.countStatus(Orders.CONFIRMED);
-        Integer deliveryInProgressCount = orderMapper.countStatus(Orders.DELIVERY_IN_PROGRESS);
+        //从计数器读取待接单、待派送、派送中订单数量，无需查询数据库
+        Map<Integer, Integer> statusCount = orderStatusCounter.countAll();
+        Integer toBeConfirmedCount = statusCount.getOrDefault(Orders.TO_BE_CONFIRMED, 0);
+        Integer confirmedCount = statusCount.getOrDefault(Orders.CONFIRMED, 0);
+        Integer deliveryInProgressCount = statusCount.getOrDefault(Orders.DELIVERY_IN_PROGRESS, 0);
 
         //创建返回对象
         OrderStatisticsVO orderStatisticsVO = new OrderStatisticsVO();
@@ -379,6 +610,12 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public void confirm(OrdersConfirmDTO ordersConfirmDTO) {
+        //查询订单
+        Orders orderDB = orderMapper.getById(ordersConfirmDTO.getId());
+        if (orderDB == null) {
+            //订单不存在
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
         //将订单改为接单状态
         Orders orders = Orders.builder()
                 .id(ordersConfirmDTO.getId())
@@ -387,6 +624,7 @@ public class OrderServiceImpl implements OrderService {
 
         //更新数据库
         orderMapper.update(orders);
+        orderStatusCounter.transition(orderDB.getOrderTime(), orderDB.getStatus(), Orders.CONFIRMED);
     }
 
     /**
@@ -422,6 +660,7 @@ public class OrderServiceImpl implements OrderService {
                 .build();
         //更新数据库
         orderMapper.update(orders);
+        orderStatusCounter.transition(orderDB.getOrderTime(), orderDB.getStatus(), Orders.CANCELLED);
     }
 
     /**
@@ -456,6 +695,9 @@ public class OrderServiceImpl implements OrderService {
                 .cancelTime(LocalDateTime.now())
                 .build();
         orderMapper.update(orders);
+        orderStatusCounter.transition(orderDB.getOrderTime(), orderDB.getStatus(), Orders.CANCELLED);
+        //已完成的订单被取消会影响营业数据，更新已结束营业日的汇总
+        businessDataDailyService.refreshIfClosed(orderDB.getOrderTime());
 
     }
 
@@ -478,6 +720,7 @@ public class OrderServiceImpl implements OrderService {
                 .status(Orders.DELIVERY_IN_PROGRESS)
                 .build();
         orderMapper.update(orders);
+        orderStatusCounter.transition(orderDB.getOrderTime(), orderDB.getStatus(), Orders.DELIVERY_IN_PROGRESS);
 
     }
 
@@ -500,6 +743,9 @@ public class OrderServiceImpl implements OrderService {
                 .deliveryTime(LocalDateTime.now())
                 .build();
         orderMapper.update(orders);
+        orderStatusCounter.transition(orderDB.getOrderTime(), orderDB.getStatus(), Orders.COMPLETED);
+        //订单完成会影响营业数据，更新已结束营业日的汇总
+        businessDataDailyService.refreshIfClosed(orderDB.getOrderTime());
     }
 
     /**
@@ -0,0 +1,280 @@
+package com.sky.service.impl;
+
+import com.sky.constant.MessageConstant;
+import com.sky.dto.ReportDateRangeDTO;
+import com.sky.exception.ReportBusinessException;
+import com.sky.properties.ReportProperties;
+import com.sky.service.ReportExportService;
+import com.sky.service.ReportService;
+import com.sky.vo.ReportExportJobVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 运营数据报表异步导出
+ * 报表在专门的线程池中生成到本地文件，不占用请求线程；客户端轮询任务状态，完成后下载文件
+ * 任务保存在本节点内存中，查询、下载需要路由到提交任务的节点
+ */
+@Service
+@Slf4j
+public class ReportExportServiceImpl implements ReportExportService {
+
+    private static final String CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    //Tomcat的sendfile相关的请求属性
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private ReportService reportService;
+    @Autowired
+    private ReportProperties reportProperties;
+
+    //任务id -> 任务
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    //日期区间 -> 任务，用于复用相同日期区间的任务
+    private final Map<String, Job> jobsByRange = new ConcurrentHashMap<>();
+    //已移除的过期任务的报表文件，下一次清理时再删除
+    private final Queue<Path> pendingDeletes = new ConcurrentLinkedQueue<>();
+
+    private ThreadPoolExecutor exportExecutor;
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(Paths.get(reportProperties.getExportDir()));
+        AtomicInteger threadCount = new AtomicInteger();
+        exportExecutor = new ThreadPoolExecutor(
+                reportProperties.getExportThreads(), reportProperties.getExportThreads(),
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(reportProperties.getExportQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "report-export-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        exportExecutor.shutdownNow();
+    }
+
+    /**
+     * 提交运营数据报表导出任务，有效期内相同日期区间的任务直接复用
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Override
+    public ReportExportJobVO submit(LocalDate begin, LocalDate end) {
+        //获取日期，默认导出最近30天
+        ReportDateRangeDTO range = reportService.checkExportDateRange(begin, end);
+
+        //生成中或未过期的相同日期区间的任务直接返回，否则创建新任务
+        Job[] created = new Job[1];
+        Job job = jobsByRange.compute(range.getBegin() + "_" + range.getEnd(), (key, old) -> {
+            if (old != null && old.isReusable()) {
+                return old;
+            }
+            created[0] = new Job(range.getBegin(), range.getEnd());
+            return created[0];
+        });
+
+        if (job == created[0]) {
+            jobs.put(job.vo.getId(), job);
+            try {
+                exportExecutor.execute(() -> generate(job));
+            } catch (RejectedExecutionException e) {
+                remove(job);
+                throw new ReportBusinessException(MessageConstant.REPORT_EXPORT_BUSY);
+            }
+        }
+        return job.vo;
+    }
+
+    /**
+     * 查询导出任务
+     *
+     * @param id
+     * @return
+     */
+    @Override
+    public ReportExportJobVO getById(String id) {
+        return getJob(id).vo;
+    }
+
+    /**
+     * 下载导出任务生成的报表文件
+     * 容器支持sendfile时由Tomcat直接把文件发送到socket，文件内容不经过堆内存；
+     * 否则按普通流复制到响应输出流，文件内容会经过堆上的缓冲区
+     *
+     * @param id
+     * @param request
+     * @param response
+     */
+    @Override
+    public void download(String id, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Job job = getJob(id);
+        if (!ReportExportJobVO.SUCCESS.equals(job.vo.getStatus())) {
+            throw new ReportBusinessException(MessageConstant.REPORT_EXPORT_JOB_NOT_FINISHED);
+        }
+
+        File file = job.file;
+        long length = file.length();
+        response.setContentType(CONTENT_TYPE);
+        response.setHeader("Content-Disposition",
+                "attachment;filename=business_data_" + job.vo.getBegin() + "_" + job.vo.getEnd() + ".xlsx");
+        response.setContentLengthLong(length);
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, length);
+            return;
+        }
+
+        Files.copy(file.toPath(), response.getOutputStream());
+    }
+
+    /**
+     * 定期清理过期的任务和报表文件
+     * sendfile在download返回后才由容器打开文件，因此过期任务先移除，使其不能再被下载，
+     * 报表文件到下一次清理时再删除，避免删除正在开始发送的文件
+     */
+    @Scheduled(fixedDelay = 60 * 1000)
+    public void cleanExpiredJobs() {
+        Path path;
+        while ((path = pendingDeletes.poll()) != null) {
+            deleteQuietly(path);
+        }
+        jobs.values().stream()
+                .filter(Job::isExpired)
+                .forEach(job -> {
+                    jobs.remove(job.vo.getId(), job);
+                    jobsByRange.remove(job.vo.getBegin() + "_" + job.vo.getEnd(), job);
+                    pendingDeletes.add(job.file.toPath());
+                });
+    }
+
+    /**
+     * 生成报表文件，先写入临时文件，完成后重命名
+     *
+     * @param job
+     */
+    private void generate(Job job) {
+        Path tmp = Paths.get(job.file.getPath() + ".tmp");
+        try {
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                reportService.exportBusinessData(job.vo.getBegin(), job.vo.getEnd(), outputStream);
+            }
+            Files.move(tmp, job.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            job.finish(ReportExportJobVO.SUCCESS, reportProperties.getExportFileTtl());
+            log.info("运营数据报表导出完成：{}", job.vo);
+        } catch (Exception e) {
+            log.error("运营数据报表导出失败：{}", job.vo, e);
+            deleteQuietly(tmp);
+            //失败的任务保留一段时间供客户端查询状态，相同日期区间可以立即重新提交
+            job.finish(ReportExportJobVO.FAILED, reportProperties.getExportFileTtl());
+        }
+    }
+
+    /**
+     * 根据id查询未过期的任务
+     *
+     * @param id
+     * @return
+     */
+    private Job getJob(String id) {
+        Job job = jobs.get(id);
+        if (job == null || job.isExpired()) {
+            throw new ReportBusinessException(MessageConstant.REPORT_EXPORT_JOB_NOT_FOUND);
+        }
+        return job;
+    }
+
+    /**
+     * 移除任务并删除报表文件
+     *
+     * @param job
+     */
+    private void remove(Job job) {
+        jobs.remove(job.vo.getId(), job);
+        jobsByRange.remove(job.vo.getBegin() + "_" + job.vo.getEnd(), job);
+        deleteQuietly(job.file.toPath());
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("删除报表文件失败：{}", path);
+        }
+    }
+
+    /**
+     * 导出任务：任务信息、报表文件、过期时间
+     */
+    private class Job {
+        private final ReportExportJobVO vo;
+        private final File file;
+        //过期时间，生成完成后才开始计算
+        private volatile long expireAt = Long.MAX_VALUE;
+
+        private Job(LocalDate begin, LocalDate end) {
+            String id = UUID.randomUUID().toString().replace("-", "");
+            this.vo = ReportExportJobVO.builder()
+                    .id(id)
+                    .begin(begin)
+                    .end(end)
+                    .status(ReportExportJobVO.RUNNING)
+                    .createTime(LocalDateTime.now())
+                    .build();
+            this.file = new File(reportProperties.getExportDir(), id + ".xlsx");
+        }
+
+        private void finish(Integer status, long ttlSeconds) {
+            vo.setFinishTime(LocalDateTime.now());
+            vo.setStatus(status);
+            expireAt = System.currentTimeMillis() + ttlSeconds * 1000;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expireAt;
+        }
+
+        //生成中或已成功且未过期的任务可以复用
+        private boolean isReusable() {
+            return !isExpired() && !ReportExportJobVO.FAILED.equals(vo.getStatus());
+        }
+    }
+
+}
@@ -1,26 +1,38 @@
 package com.sky.service.impl;
 
+import com.sky.constant.MessageConstant;
+import com.sky.dto.DailyOrderStatisticsDTO;
 import com.sky.dto.GoodsSalesDTO;
+import com.sky.dto.ReportDateRangeDTO;
+import com.sky.entity.BusinessDataDaily;
 import com.sky.entity.Orders;
+import com.sky.exception.ReportBusinessException;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.properties.ReportProperties;
+import com.sky.service.BusinessDataDailyService;
 import com.sky.service.ReportService;
-import com.sky.service.WorkspaceService;
 import com.sky.vo.*;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFRow;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import javax.servlet.ServletOutputStream;
-import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -30,12 +42,19 @@ import java.util.stream.Collectors;
 @Service
 public class ReportServiceImpl implements ReportService {
 
+    //模板中明细数据的第一行、第一列和最后一列
+    private static final int DETAIL_FIRST_ROW = 7;
+    private static final int DETAIL_FIRST_CELL = 1;
+    private static final int DETAIL_LAST_CELL = 6;
+
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
     private UserMapper userMapper;
     @Autowired
-    private WorkspaceService workspaceService;
+    private ReportProperties reportProperties;
+    @Autowired
+    private BusinessDataDailyService businessDataDailyService;
 
     /**
      * 统计指定时间段内的营业额
@@ -47,29 +66,16 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public TurnoverReportVO getTrunoverStatistics(LocalDate begin, LocalDate end) {
         //构建返回日期的集合
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        //将begin到end的日期加到dateList中
-        while (!begin.equals(end)) {
-            begin = begin.plusDays(1);  //加一天
-            //放入dateList中
-            dateList.add(begin);
-        }
+        List<LocalDate> dateList = getDateList(begin, end);
+        //查询区间内每天的订单统计数据，已结束的营业日读取每日汇总表
+        Map<LocalDate, DailyOrderStatisticsDTO> statisticsMap = getDailyOrderStatistics(begin, end);
 
         //构建返回营业额
         List<Double> turnoverList = new ArrayList<>();
         for (LocalDate date : dateList) {
-            //当天开始、结束时间
-            LocalDateTime beginDateTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endDateTime = LocalDateTime.of(date, LocalTime.MAX);
-            //封装查询条件Map
-            Map map = new HashMap();
-            map.put("begin", beginDateTime);
-            map.put("end", endDateTime);
-            map.put("status", Orders.COMPLETED);
-            //查询对应日期的营业额：“已完成”状态订单的金额合计
-            Double turnover = orderMapper.sumByMap(map);
-            turnover = (turnover == null) ? 0.0 : turnover;  //当天订单数为0，返回null。赋值0.0
+            DailyOrderStatisticsDTO statistics = statisticsMap.get(date);
+            //当天没有订单，营业额为0.0
+            Double turnover = (statistics == null) ? 0.0 : statistics.getTurnover();
             turnoverList.add(turnover);
         }
 
@@ -92,14 +98,14 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
         //构建返回日期的集合
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        //将begin到end的日期加到dateList中
-        while (!begin.equals(end)) {
-            begin = begin.plusDays(1);  //加一天
-            //放入dateList中
-            dateList.add(begin);
-        }
+        List<LocalDate> dateList = getDateList(begin, end);
+        //查询区间内每天的新增用户数，已结束的营业日读取每日汇总表
+        Map<LocalDate, Integer> newUserMap = getDailyNewUsers(begin, end);
+
+        //查询区间开始前的用户总量 create_time < begin，作为累加的基数
+        Map map = new HashMap();
+        map.put("end", LocalDateTime.of(begin, LocalTime.MIN));
+        Integer totalUserCount = userMapper.countByMap(map);
 
         //存放每天用户总量
         List<Integer> totalUserList = new ArrayList<>();
@@ -107,20 +113,12 @@ public class ReportServiceImpl implements ReportService {
         List<Integer> newUserList = new ArrayList<>();
 
         for (LocalDate date : dateList) {
-            //当天开始时间
-            LocalDateTime beginDateTime = LocalDateTime.of(begin, LocalTime.MIN);
-            LocalDateTime endDateTime = LocalDateTime.of(end, LocalTime.MAX);
-
-            //查询截止到endDateTime的总用户数量 create_time < endDateTime
-            Map map = new HashMap();
-            map.put("end", endDateTime);
-            Integer totlaUserCount = userMapper.countByMap(map);
-            totalUserList.add(totlaUserCount);
-
-            //查询每天新增的用户总量  beginDateTIme < create_time < endDateTime
-            map.put("begin", beginDateTime);
-            Integer newUserCount = userMapper.countByMap(map);
+            //当天没有新增用户，新增用户数为0
+            Integer newUserCount = newUserMap.getOrDefault(date, 0);
             newUserList.add(newUserCount);
+            //截止到当天结束的用户总量
+            totalUserCount += newUserCount;
+            totalUserList.add(totalUserCount);
         }
         UserReportVO userReportVO = UserReportVO.builder()
                 .dateList(StringUtils.join(dateList, ","))
@@ -141,29 +139,19 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public OrderReportVO getOrderStatistics(LocalDate begin, LocalDate end) {
         //构建返回日期的集合
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        //将begin到end的日期加到dateList中
-        while (!begin.equals(end)) {
-            begin = begin.plusDays(1);  //加一天
-            //放入dateList中
-            dateList.add(begin);
-        }
+        List<LocalDate> dateList = getDateList(begin, end);
+        //查询区间内每天的订单统计数据，已结束的营业日读取每日汇总表
+        Map<LocalDate, DailyOrderStatisticsDTO> statisticsMap = getDailyOrderStatistics(begin, end);
 
         //存放每日订单数
         List<Integer> orderCountList = new ArrayList<>();
         //存放每日有效订单数
         List<Integer> validOrderCountList = new ArrayList<>();
         for (LocalDate date : dateList) {
-            //转换为日期时间类型
-            LocalDateTime beginDateTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endDateTime = LocalDateTime.of(date, LocalTime.MAX);
-            //查询每日订单数
-            Integer orderCount = getOrderCount(beginDateTime, endDateTime, null);
-            orderCountList.add(orderCount);
-            //查询每日有效订单数
-            Integer validOrderCount = getOrderCount(beginDateTime, endDateTime, Orders.COMPLETED);
-            validOrderCountList.add(validOrderCount);
+            DailyOrderStatisticsDTO statistics = statisticsMap.get(date);
+            //当天没有订单，订单数、有效订单数均为0
+            orderCountList.add(statistics == null ? 0 : statistics.getTotalOrderCount());
+            validOrderCountList.add(statistics == null ? 0 : statistics.getValidOrderCount());
         }
         //计算区间内订单总数
         Integer orderCountSum = orderCountList.stream().reduce(Integer::sum).get();
@@ -189,19 +177,66 @@ public class ReportServiceImpl implements ReportService {
     }
 
     /**
-     * 根据条件统计订单数量
+     * 构建begin到end（包含两端）的日期集合
      *
      * @param begin
      * @param end
-     * @param status
      * @return
      */
-    private Integer getOrderCount(LocalDateTime begin, LocalDateTime end, Integer status) {
-        Map map = new HashMap();
-        map.put("begin", begin);
-        map.put("end", end);
-        map.put("status", status);
-        return orderMapper.countByMap(map);
+    private List<LocalDate> getDateList(LocalDate begin, LocalDate end) {
+        List<LocalDate> dateList = new ArrayList<>();
+        dateList.add(begin);
+        //将begin到end的日期加到dateList中
+        while (!begin.equals(end)) {
+            begin = begin.plusDays(1);  //加一天
+            //放入dateList中
+            dateList.add(begin);
+        }
+        return dateList;
+    }
+
+    /**
+     * 查询指定日期区间每天的订单统计数据
+     * 已结束的营业日从每日汇总表读取，当天及之后的日期按天分组实时统计
+     * 没有订单的日期可能不在返回的Map中，由调用方补0
+     *
+     * @param begin
+     * @param end
+     * @return key为日期，value为当天的统计数据
+     */
+    private Map<LocalDate, DailyOrderStatisticsDTO> getDailyOrderStatistics(LocalDate begin, LocalDate end) {
+        Map<LocalDate, DailyOrderStatisticsDTO> statisticsMap = new HashMap<>();
+        LocalDate closedEnd = getClosedEnd(end);
+        if (!begin.isAfter(closedEnd)) {
+            for (BusinessDataDaily businessDataDaily : businessDataDailyService.list(begin, closedEnd)) {
+                statisticsMap.put(businessDataDaily.getBusinessDate(), DailyOrderStatisticsDTO.builder()
+                        .orderDate(businessDataDaily.getBusinessDate())
+                        .turnover(businessDataDaily.getTurnover().doubleValue())
+                        .totalOrderCount(businessDataDaily.getTotalOrderCount())
+                        .validOrderCount(businessDataDaily.getValidOrderCount())
+                        .build());
+            }
+        }
+
+        LocalDate openBegin = begin.isAfter(closedEnd) ? begin : closedEnd.plusDays(1);
+        if (!openBegin.isAfter(end)) {
+            LocalDateTime beginDateTime = LocalDateTime.of(openBegin, LocalTime.MIN);
+            LocalDateTime endDateTime = LocalDateTime.of(end.plusDays(1), LocalTime.MIN);
+            orderMapper.countGroupByDate(beginDateTime, endDateTime, Orders.COMPLETED)
+                    .forEach(statistics -> statisticsMap.put(statistics.getOrderDate(), statistics));
+        }
+        return statisticsMap;
+    }
+
+    /**
+     * 日期区间内最后一个已结束的营业日，即end和昨天中较早的一天
+     *
+     * @param end
+     * @return
+     */
+    private LocalDate getClosedEnd(LocalDate end) {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        return end.isAfter(yesterday) ? yesterday : end;
     }
 
     /**
@@ -215,7 +250,7 @@ public class ReportServiceImpl implements ReportService {
     public SalesTop10ReportVO getTop10(LocalDate begin, LocalDate end) {
         //转换为LocalDateTime类型
         LocalDateTime beginDateTime = LocalDateTime.of(begin, LocalTime.MIN);
-        LocalDateTime endDateTime = LocalDateTime.of(end, LocalTime.MAX);
+        LocalDateTime endDateTime = LocalDateTime.of(end.plusDays(1), LocalTime.MIN);
         //查询时间区间内的top10商品
         List<GoodsSalesDTO> salesTop = orderMapper.getSalesTop(beginDateTime, endDateTime);
         //获得商品名称集合
@@ -231,67 +266,195 @@ public class ReportServiceImpl implements ReportService {
         return salesTop10ReportVO;
     }
 
+    /**
+     * 补全并校验运营数据报表的导出日期区间，默认导出最近30天
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Override
+    public ReportDateRangeDTO checkExportDateRange(LocalDate begin, LocalDate end) {
+        if (end == null) {
+            end = LocalDate.now().minusDays(1);
+        }
+        if (begin == null) {
+            begin = end.minusDays(29);
+        }
+        if (begin.isAfter(end)) {
+            throw new ReportBusinessException(MessageConstant.REPORT_DATE_RANGE_ERROR);
+        }
+        if (ChronoUnit.DAYS.between(begin, end) + 1 > reportProperties.getExportMaxDays()) {
+            throw new ReportBusinessException(MessageConstant.REPORT_DATE_RANGE_TOO_LONG);
+        }
+        return new ReportDateRangeDTO(begin, end);
+    }
+
     /**
      * 导出运营数据报表
+     * 已结束的营业日读取每日汇总表，其余日期按天分组实时统计，明细行通过SXSSF流式写入，内存占用与区间长度无关
      *
-     * @param response
+     * @param begin 为null时默认为30天前
+     * @param end 为null时默认为昨天
+     * @param outputStream
      */
     @Override
-    public void exportBusinessData(HttpServletResponse response) {
-        //获取日期
-        LocalDate beginDate = LocalDate.now().minusDays(30);
-        LocalDate endDate = LocalDate.now().minusDays(1);
-        //查询数据库，获取最近30天的营业数据
+    public void exportBusinessData(LocalDate begin, LocalDate end, OutputStream outputStream) {
+        ReportDateRangeDTO range = checkExportDateRange(begin, end);
+        begin = range.getBegin();
+        end = range.getEnd();
+
+        //查询区间内每天的订单统计数据、新增用户数
+        Map<LocalDate, DailyOrderStatisticsDTO> orderStatisticsMap = getDailyOrderStatistics(begin, end);
+        Map<LocalDate, Integer> newUserMap = getDailyNewUsers(begin, end);
+
+        //合计区间内的营业数据
+        DailyOrderStatisticsDTO total = DailyOrderStatisticsDTO.builder()
+                .turnover(0.0)
+                .totalOrderCount(0)
+                .validOrderCount(0)
+                .build();
+        orderStatisticsMap.values().forEach(statistics -> {
+            total.setTurnover(total.getTurnover() + statistics.getTurnover());
+            total.setTotalOrderCount(total.getTotalOrderCount() + statistics.getTotalOrderCount());
+            total.setValidOrderCount(total.getValidOrderCount() + statistics.getValidOrderCount());
+        });
+        int totalNewUsers = newUserMap.values().stream().mapToInt(Integer::intValue).sum();
 
-        BusinessDataVO businessDataVO = workspaceService.getBusinessData(LocalDateTime.of(beginDate, LocalTime.MIN), LocalDateTime.of(endDate, LocalTime.MIN));
         //通过POI将数据写入文件
-        InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream("template/运营数据报表模板.xlsx");
-        try {
-            //基于模板文件创建一个excel表格
-            XSSFWorkbook excel = new XSSFWorkbook(inputStream);
+        try (InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream("template/运营数据报表模板.xlsx");
+             XSSFWorkbook template = new XSSFWorkbook(inputStream)) {
             //获取工作簿
-            XSSFSheet sheet1 = excel.getSheet("Sheet1");
+            XSSFSheet sheet1 = template.getSheet("Sheet1");
 
             //填充数据
-            sheet1.getRow(1).getCell(1).setCellValue("时间：" + beginDate + "至" + endDate);
+            sheet1.getRow(1).getCell(1).setCellValue("时间：" + begin + "至" + end);
             //获得第四行
             XSSFRow row3 = sheet1.getRow(3);
-            row3.getCell(2).setCellValue(businessDataVO.getTurnover());  //填充营业额(3,2)
-            row3.getCell(4).setCellValue(businessDataVO.getOrderCompletionRate());  //填充订单完成率(3,4)
-            row3.getCell(6).setCellValue(businessDataVO.getNewUsers());  //填充新增用户数(3.6)
+            row3.getCell(2).setCellValue(total.getTurnover());  //填充营业额(3,2)
+            row3.getCell(4).setCellValue(getOrderCompletionRate(total));  //填充订单完成率(3,4)
+            row3.getCell(6).setCellValue(totalNewUsers);  //填充新增用户数(3.6)
             //获得第五行
             XSSFRow row4 = sheet1.getRow(4);
-            row4.getCell(2).setCellValue(businessDataVO.getValidOrderCount());  //填充有效订单数(4,2)
-            row4.getCell(4).setCellValue(businessDataVO.getUnitPrice());  //填充平均客单价(4,4)
-
-            //填充30天的明细数据
-            for(int i = 0; i < 30; i++){
-                //获取该天日期
-                LocalDate date = beginDate.plusDays(1);
-                //查询改天的营业数据
-                BusinessDataVO businessData = workspaceService.getBusinessData(LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX));
-                //从第8行开始填充数据
-                XSSFRow row = sheet1.getRow(i + 7);
-                //填充单元格
-                row.getCell(1).setCellValue(date.toString());
-                row.getCell(2).setCellValue(businessData.getTurnover());
-                row.getCell(3).setCellValue(businessData.getValidOrderCount());
-                row.getCell(4).setCellValue(businessData.getOrderCompletionRate());
-                row.getCell(5).setCellValue(businessData.getUnitPrice());
-                row.getCell(6).setCellValue(businessData.getNewUsers());
+            row4.getCell(2).setCellValue(total.getValidOrderCount());  //填充有效订单数(4,2)
+            row4.getCell(4).setCellValue(getUnitPrice(total));  //填充平均客单价(4,4)
+
+            //记录模板明细行的样式后删除模板中的明细行，SXSSF只能在模板已有行之后写入新行
+            XSSFRow detailRow = sheet1.getRow(DETAIL_FIRST_ROW);
+            float detailRowHeight = detailRow.getHeightInPoints();
+            CellStyle[] detailStyles = new CellStyle[DETAIL_LAST_CELL + 1];
+            for (int i = DETAIL_FIRST_CELL; i <= DETAIL_LAST_CELL; i++) {
+                detailStyles[i] = detailRow.getCell(i).getCellStyle();
+            }
+            for (int i = sheet1.getLastRowNum(); i >= DETAIL_FIRST_ROW; i--) {
+                XSSFRow row = sheet1.getRow(i);
+                if (row != null) {
+                    sheet1.removeRow(row);
+                }
             }
 
-            //获取响应输出流
-            ServletOutputStream outputStream = response.getOutputStream();
-            //将excel文件推送到输出流
-            excel.write(outputStream);
+            //基于模板创建流式写入的excel表格，超出窗口的行写入临时文件
+            SXSSFWorkbook excel = new SXSSFWorkbook(template, reportProperties.getExportRowAccessWindow());
+            excel.setCompressTempFiles(true);
+            try {
+                SXSSFSheet sheet = excel.getSheet("Sheet1");
+                //从第8行开始逐天填充明细数据
+                int rowNum = DETAIL_FIRST_ROW;
+                for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+                    //当天没有订单、新增用户，数据均为0
+                    DailyOrderStatisticsDTO statistics = orderStatisticsMap.getOrDefault(date, DailyOrderStatisticsDTO.builder()
+                            .orderDate(date)
+                            .turnover(0.0)
+                            .totalOrderCount(0)
+                            .validOrderCount(0)
+                            .build());
 
-            //关闭资源股
-            outputStream.close();
-            excel.close();
+                    SXSSFRow row = sheet.createRow(rowNum++);
+                    row.setHeightInPoints(detailRowHeight);
+                    createCell(row, 1, detailStyles).setCellValue(date.toString());
+                    createCell(row, 2, detailStyles).setCellValue(statistics.getTurnover());
+                    createCell(row, 3, detailStyles).setCellValue(statistics.getValidOrderCount());
+                    createCell(row, 4, detailStyles).setCellValue(getOrderCompletionRate(statistics));
+                    createCell(row, 5, detailStyles).setCellValue(getUnitPrice(statistics));
+                    createCell(row, 6, detailStyles).setCellValue(newUserMap.getOrDefault(date, 0));
+                }
 
+                //将excel文件推送到输出流
+                excel.write(outputStream);
+                outputStream.flush();
+            } finally {
+                //删除临时文件
+                excel.dispose();
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * 查询指定日期区间每天的新增用户数
+     * 已结束的营业日从每日汇总表读取，当天及之后的日期按天分组实时统计
+     * 没有新增用户的日期可能不在返回的Map中，由调用方补0
+     *
+     * @param begin
+     * @param end
+     * @return key为日期，value为当天的新增用户数
+     */
+    private Map<LocalDate, Integer> getDailyNewUsers(LocalDate begin, LocalDate end) {
+        Map<LocalDate, Integer> newUserMap = new HashMap<>();
+        LocalDate closedEnd = getClosedEnd(end);
+        if (!begin.isAfter(closedEnd)) {
+            businessDataDailyService.list(begin, closedEnd)
+                    .forEach(businessDataDaily -> newUserMap.put(businessDataDaily.getBusinessDate(), businessDataDaily.getNewUsers()));
+        }
+
+        LocalDate openBegin = begin.isAfter(closedEnd) ? begin : closedEnd.plusDays(1);
+        if (!openBegin.isAfter(end)) {
+            LocalDateTime beginDateTime = LocalDateTime.of(openBegin, LocalTime.MIN);
+            LocalDateTime endDateTime = LocalDateTime.of(end.plusDays(1), LocalTime.MIN);
+            userMapper.countGroupByDate(beginDateTime, endDateTime)
+                    .forEach(statistics -> newUserMap.put(statistics.getCreateDate(), statistics.getNewUsers()));
+        }
+        return newUserMap;
+    }
+
+    /**
+     * 订单完成率：有效订单数 / 订单总数
+     *
+     * @param statistics
+     * @return
+     */
+    private Double getOrderCompletionRate(DailyOrderStatisticsDTO statistics) {
+        if (statistics.getTotalOrderCount() == 0) {
+            return 0.0;
+        }
+        return statistics.getValidOrderCount().doubleValue() / statistics.getTotalOrderCount();
+    }
+
+    /**
+     * 平均客单价：营业额 / 有效订单数
+     *
+     * @param statistics
+     * @return
+     */
+    private Double getUnitPrice(DailyOrderStatisticsDTO statistics) {
+        if (statistics.getValidOrderCount() == 0) {
+            return 0.0;
+        }
+        return statistics.getTurnover() / statistics.getValidOrderCount();
+    }
+
+    /**
+     * 创建明细行的单元格，使用模板明细行对应列的样式
+     *
+     * @param row
+     * @param column
+     * @param styles
+     * @return
+     */
+    private Cell createCell(Row row, int column, CellStyle[] styles) {
+        Cell cell = row.createCell(column);
+        cell.setCellStyle(styles[column]);
+        return cell;
+    }
 }
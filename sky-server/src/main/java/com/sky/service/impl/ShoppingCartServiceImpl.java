@@ -1,6 +1,6 @@
 package com.sky.service.impl;
 
-import com.fasterxml.jackson.databind.util.BeanUtil;
+import com.sky.cache.ShoppingCartRedisStore;
 import com.sky.context.BaseContext;
 import com.sky.dto.ShoppingCartDTO;
 import com.sky.entity.Dish;
@@ -9,10 +9,13 @@ import com.sky.entity.ShoppingCart;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.ShoppingCartProperties;
 import com.sky.service.ShoppingCartService;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -26,6 +29,10 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private ShoppingCartRedisStore shoppingCartRedisStore;
+    @Autowired
+    private ShoppingCartProperties shoppingCartProperties;
 
     /**
      * 添加购物车
@@ -37,6 +44,19 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
         ShoppingCart shoppingCart = new ShoppingCart();
         BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);  //属性拷贝
         shoppingCart.setUserId(BaseContext.getCurrentId());  //设置当前登录人的userId
+
+        if (shoppingCartProperties.isRedisStorage()) {
+            //redis存储：数量原子+1，只有商品信息不存在时才查询并写入商品信息
+            //上一次写入失败时，下一次加购会重新写入
+            boolean hasItem = shoppingCartRedisStore.increment(shoppingCart.getUserId(), shoppingCart, 1);
+            if (!hasItem) {
+                setItemInfo(shoppingCart);
+                shoppingCart.setCreateTime(LocalDateTime.now());
+                shoppingCartRedisStore.putItemIfAbsent(shoppingCart.getUserId(), shoppingCart);
+            }
+            return;
+        }
+
         //判断当前加入到购物车中的商品是否已经存在
         List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);  //list只有两种情况：null或list.size=1
         //如果已经存在，只需将数量+1
@@ -49,22 +69,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
             shoppingCartMapper.updateNumberById(cart);
         } else {
             //不存在，则需要插入一条购物车数据
-            Long dishId = shoppingCartDTO.getDishId();
-            //判断本次添加到购物车的是套餐还是菜品
-            if (dishId != null) {
-                //是菜品，查询相关信息，记录在ShoppingCart中
-                Dish dish = dishMapper.getById(dishId);
-                shoppingCart.setName(dish.getName());
-                shoppingCart.setImage(dish.getImage());
-                shoppingCart.setAmount(dish.getPrice());
-
-            } else {
-                //是套餐
-                Setmeal setmeal = setmealMapper.getById(shoppingCartDTO.getSetmealId());
-                shoppingCart.setName(setmeal.getName());
-                shoppingCart.setImage(setmeal.getImage());
-                shoppingCart.setAmount(setmeal.getPrice());
-            }
+            setItemInfo(shoppingCart);
             //往shoppingCart对象设置数量和时间
             shoppingCart.setNumber(1);
             shoppingCart.setCreateTime(LocalDateTime.now());
@@ -73,6 +78,30 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
         }
     }
 
+    /**
+     * 查询菜品或套餐，设置购物车商品的名称、图片、单价
+     *
+     * @param shoppingCart
+     */
+    private void setItemInfo(ShoppingCart shoppingCart) {
+        Long dishId = shoppingCart.getDishId();
+        //判断本次添加到购物车的是套餐还是菜品
+        if (dishId != null) {
+            //是菜品，查询相关信息，记录在ShoppingCart中
+            Dish dish = dishMapper.getById(dishId);
+            shoppingCart.setName(dish.getName());
+            shoppingCart.setImage(dish.getImage());
+            shoppingCart.setAmount(dish.getPrice());
+
+        } else {
+            //是套餐
+            Setmeal setmeal = setmealMapper.getById(shoppingCart.getSetmealId());
+            shoppingCart.setName(setmeal.getName());
+            shoppingCart.setImage(setmeal.getImage());
+            shoppingCart.setAmount(setmeal.getPrice());
+        }
+    }
+
     /**
      * 查看购物车
      * @return
@@ -80,19 +109,54 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
     @Override
     public List<ShoppingCart> showShoppingCart() {
         Long userId = BaseContext.getCurrentId();
+        if (shoppingCartProperties.isRedisStorage()) {
+            return shoppingCartRedisStore.list(userId);
+        }
         ShoppingCart shoppingCart = new ShoppingCart();
         shoppingCart.setUserId(userId);
         List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
         return list;
     }
 
+    /**
+     * 批量加入购物车
+     *
+     * @param shoppingCartList
+     */
+    @Override
+    public void addBatch(List<ShoppingCart> shoppingCartList) {
+        if (shoppingCartProperties.isRedisStorage()) {
+            for (ShoppingCart shoppingCart : shoppingCartList) {
+                shoppingCartRedisStore.increment(shoppingCart.getUserId(), shoppingCart, shoppingCart.getNumber());
+                shoppingCartRedisStore.putItem(shoppingCart.getUserId(), shoppingCart);
+            }
+            return;
+        }
+        shoppingCartMapper.insertBatch(shoppingCartList);
+    }
+
     /**
      * 清空购物车
      */
     @Override
     public void cleanShoppingCart() {
+        Long userId = BaseContext.getCurrentId();
+        if (shoppingCartProperties.isRedisStorage()) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                //在事务中（如下单）时，事务提交后再清空，事务回滚时保留购物车
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        shoppingCartRedisStore.clean(userId);
+                    }
+                });
+            } else {
+                shoppingCartRedisStore.clean(userId);
+            }
+            return;
+        }
         //删除所有和该用户相关的购物车数据
-        shoppingCartMapper.deleteByUserId(BaseContext.getCurrentId());
+        shoppingCartMapper.deleteByUserId(userId);
 
     }
 }
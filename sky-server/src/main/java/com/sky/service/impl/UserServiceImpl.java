@@ -28,6 +28,9 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private HttpClientUtil httpClientUtil;
+
     @Override
     public User wxLogin(UserLoginDTO userLoginDTO) {
         String openid = getOpenId(userLoginDTO.getCode());
@@ -62,8 +65,12 @@ public class UserServiceImpl implements UserService {
         map.put("secret", weChatProperties.getSecret());
         map.put("js_code", code);
         map.put("grant_type", "authorization_code");
-        String json = HttpClientUtil.doGet(WX_LOGIN_URI, map);
+        String json = httpClientUtil.doGet(WX_LOGIN_URI, map);
         JSONObject jsonObject = JSON.parseObject(json);
+        //请求失败时没有响应内容，按登录失败处理
+        if (jsonObject == null) {
+            return null;
+        }
         String openid = jsonObject.getString("openid");
         return openid;
     }
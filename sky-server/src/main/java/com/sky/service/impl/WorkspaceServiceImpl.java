@@ -1,11 +1,14 @@
 package com.sky.service.impl;
 
+import com.sky.cache.OrderStatusCounter;
 import com.sky.constant.StatusConstant;
+import com.sky.entity.BusinessDataDaily;
 import com.sky.entity.Orders;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.service.BusinessDataDailyService;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
@@ -14,6 +17,9 @@ import com.sky.vo.SetmealOverViewVO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.HashMap;
@@ -31,11 +37,16 @@ public class WorkspaceServiceImpl implements WorkspaceService {
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private BusinessDataDailyService businessDataDailyService;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
 
     /**
      * 根据时间段统计营业数据
-     * @param begin
-     * @param end
+     * 区间内已结束的完整营业日从每日汇总表读取，其余部分（如当天）实时统计
+     * @param begin 包含
+     * @param end 不包含
      * @return
      */
     public BusinessDataVO getBusinessData(LocalDateTime begin, LocalDateTime end) {
@@ -47,6 +58,60 @@ public class WorkspaceServiceImpl implements WorkspaceService {
          * 新增用户：当日新增用户的数量
          */
 
+        //区间内完整覆盖且已结束的营业日
+        LocalDate closedBegin = begin.toLocalTime().equals(LocalTime.MIN) ? begin.toLocalDate() : begin.toLocalDate().plusDays(1);
+        LocalDate closedEnd = end.toLocalDate().minusDays(1);
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        if (closedEnd.isAfter(yesterday)) {
+            closedEnd = yesterday;
+        }
+
+        BusinessDataDaily data;
+        if (closedBegin.isAfter(closedEnd)) {
+            //没有已结束的完整营业日，全部实时统计
+            data = countBusinessData(begin, end);
+        } else {
+            data = businessDataDailyService.sum(closedBegin, closedEnd);
+            //已结束营业日之前、之后不足一天的部分实时统计
+            LocalDateTime closedBeginTime = LocalDateTime.of(closedBegin, LocalTime.MIN);
+            if (begin.isBefore(closedBeginTime)) {
+                data = merge(data, countBusinessData(begin, closedBeginTime));
+            }
+            if (end.isAfter(LocalDateTime.of(closedEnd.plusDays(1), LocalTime.MIN))) {
+                data = merge(data, countBusinessData(LocalDateTime.of(closedEnd.plusDays(1), LocalTime.MIN), end));
+            }
+        }
+
+        Double turnover = data.getTurnover().doubleValue();
+        Integer totalOrderCount = data.getTotalOrderCount();
+        Integer validOrderCount = data.getValidOrderCount();
+
+        Double unitPrice = 0.0;
+
+        Double orderCompletionRate = 0.0;
+        if(totalOrderCount != 0 && validOrderCount != 0){
+            //订单完成率
+            orderCompletionRate = validOrderCount.doubleValue() / totalOrderCount;
+            //平均客单价
+            unitPrice = turnover / validOrderCount;
+        }
+
+        return BusinessDataVO.builder()
+                .turnover(turnover)
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(orderCompletionRate)
+                .unitPrice(unitPrice)
+                .newUsers(data.getNewUsers())
+                .build();
+    }
+
+    /**
+     * 根据订单表、用户表实时统计时间段内的营业数据
+     * @param begin
+     * @param end
+     * @return
+     */
+    private BusinessDataDaily countBusinessData(LocalDateTime begin, LocalDateTime end) {
         Map map = new HashMap();
         map.put("begin",begin);
         map.put("end",end);
@@ -62,28 +127,32 @@ public class WorkspaceServiceImpl implements WorkspaceService {
         //有效订单数
         Integer validOrderCount = orderMapper.countByMap(map);
 
-        Double unitPrice = 0.0;
-
-        Double orderCompletionRate = 0.0;
-        if(totalOrderCount != 0 && validOrderCount != 0){
-            //订单完成率
-            orderCompletionRate = validOrderCount.doubleValue() / totalOrderCount;
-            //平均客单价
-            unitPrice = turnover / validOrderCount;
-        }
-
         //新增用户数
         Integer newUsers = userMapper.countByMap(map);
 
-        return BusinessDataVO.builder()
-                .turnover(turnover)
+        return BusinessDataDaily.builder()
+                .turnover(BigDecimal.valueOf(turnover))
+                .totalOrderCount(totalOrderCount)
                 .validOrderCount(validOrderCount)
-                .orderCompletionRate(orderCompletionRate)
-                .unitPrice(unitPrice)
                 .newUsers(newUsers)
                 .build();
     }
 
+    /**
+     * 合并两段时间的营业数据
+     * @param a
+     * @param b
+     * @return
+     */
+    private BusinessDataDaily merge(BusinessDataDaily a, BusinessDataDaily b) {
+        return BusinessDataDaily.builder()
+                .turnover(a.getTurnover().add(b.getTurnover()))
+                .totalOrderCount(a.getTotalOrderCount() + b.getTotalOrderCount())
+                .validOrderCount(a.getValidOrderCount() + b.getValidOrderCount())
+                .newUsers(a.getNewUsers() + b.getNewUsers())
+                .build();
+    }
+
 
     /**
      * 查询订单管理数据
@@ -91,28 +160,23 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public OrderOverViewVO getOrderOverView() {
-        Map map = new HashMap();
-        map.put("begin", LocalDateTime.now().with(LocalTime.MIN));
-        map.put("status", Orders.TO_BE_CONFIRMED);
+        //从计数器读取当天各状态的订单数量，无需查询数据库
+        Map<Integer, Integer> statusCount = orderStatusCounter.countToday();
 
         //待接单
-        Integer waitingOrders = orderMapper.countByMap(map);
+        Integer waitingOrders = statusCount.getOrDefault(Orders.TO_BE_CONFIRMED, 0);
 
         //待派送
-        map.put("status", Orders.CONFIRMED);
-        Integer deliveredOrders = orderMapper.countByMap(map);
+        Integer deliveredOrders = statusCount.getOrDefault(Orders.CONFIRMED, 0);
 
         //已完成
-        map.put("status", Orders.COMPLETED);
-        Integer completedOrders = orderMapper.countByMap(map);
+        Integer completedOrders = statusCount.getOrDefault(Orders.COMPLETED, 0);
 
         //已取消
-        map.put("status", Orders.CANCELLED);
-        Integer cancelledOrders = orderMapper.countByMap(map);
+        Integer cancelledOrders = statusCount.getOrDefault(Orders.CANCELLED, 0);
 
         //全部订单
-        map.put("status", null);
-        Integer allOrders = orderMapper.countByMap(map);
+        Integer allOrders = statusCount.values().stream().mapToInt(Integer::intValue).sum();
 
         return OrderOverViewVO.builder()
                 .waitingOrders(waitingOrders)
@@ -0,0 +1,32 @@
+package com.sky.task;
+
+import com.sky.service.BusinessDataDailyService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * 定时任务类，定时汇总每日营业数据
+ */
+@Component
+@Slf4j
+public class BusinessDataTask {
+
+    @Autowired
+    private BusinessDataDailyService businessDataDailyService;
+
+    /**
+     * 补齐缺失的每日营业数据，启动时执行一次，之后每天凌晨汇总前一天的数据
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 10 0 * * ? ")  //每天凌晨0点10分触发一次
+    public void backfillBusinessData() {
+        log.info("定时汇总每日营业数据：{}", LocalDateTime.now());
+        businessDataDailyService.backfill();
+    }
+}
@@ -0,0 +1,26 @@
+package com.sky.task;
+
+import com.sky.utils.HttpClientUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Http连接池的统计任务
+ */
+@Component
+@Slf4j
+public class HttpClientTask {
+
+    @Autowired
+    private HttpClientUtil httpClientUtil;
+
+    /**
+     * 每分钟输出一次连接池和请求的统计信息
+     */
+    @Scheduled(fixedRate = 60 * 1000)
+    public void logStats() {
+        log.info("Http连接池统计：{}", httpClientUtil.getStats());
+    }
+}
@@ -1,14 +1,21 @@
 package com.sky.task;
 
+import com.sky.cache.OrderStatusCounter;
 import com.sky.entity.Orders;
 import com.sky.mapper.OrderMapper;
+import com.sky.service.BusinessDataDailyService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 定时任务类，定时处理订单状态
@@ -19,35 +26,36 @@ public class OrderTask {
 
     @Autowired
     private OrderMapper orderMapper;
+    @Autowired
+    private BusinessDataDailyService businessDataDailyService;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+
+    //每批处理的订单数，避免一次加载全部订单、长时间占用连接
+    private static final int BATCH_SIZE = 500;
 
     /**
      * 处理超时未付款订单
+     * 超时订单由OrderTimeoutQueue按时取消，这里只兜底处理未登记或登记丢失的订单
      */
-    @Scheduled(cron = "0 * * * * ? ")  //每分钟执行一次
+    @Scheduled(cron = "0 0/10 * * * ? ")  //每10分钟执行一次
 //    @Scheduled(cron = "1/10 * * * * ?")
     public void processTimeoutOrder() {
         LocalDateTime now = LocalDateTime.now();
         log.info("定时处理超时订单：{}", now);
 
         //当前超时订单时间
-        LocalDateTime timeout = now.plusMinutes(-15);  //15分钟前
-        //查询15分钟前的未付款订单
-
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTimeLT(Orders.PENDING_PAYMENT, timeout);
-
-        if (ordersList != null && ordersList.size() > 0) {
-            for (Orders orderDB : ordersList) {
-                //将订单修改为取消状态
-                Orders orders = Orders.builder()
-                        .id(orderDB.getId())
-                        .status(Orders.CANCELLED)
-                        .cancelReason("超时未支付自动取消")
-                        .cancelTime(now)
-                        .build();
-                //更新数据库
-
-                orderMapper.update(orders);
-            }
+        LocalDateTime timeout = now.plusMinutes(-OrderTimeoutQueue.TIMEOUT_MINUTES);  //15分钟前
+        //将15分钟前的未付款订单修改为取消状态
+        Orders orders = Orders.builder()
+                .status(Orders.CANCELLED)
+                .cancelReason("超时未支付自动取消")
+                .cancelTime(now)
+                .build();
+
+        int count = updateStatusInBatches(Orders.PENDING_PAYMENT, timeout, orders, null);
+        if (count > 0) {
+            log.info("超时未支付订单已取消：{}单", count);
         }
     }
 
@@ -60,23 +68,55 @@ public class OrderTask {
         LocalDateTime now = LocalDateTime.now();
         log.info("定时处理派送中的订单：{}", now);
 
-        //查询上一工作日处于派送中状态的订单
+        //将上一工作日处于派送中状态的订单修改为完成状态
         LocalDateTime lastDay = now.plusHours(-1);
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTimeLT(Orders.DELIVERY_IN_PROGRESS, lastDay);
-        if (ordersList != null && ordersList.size() > 0) {
-            for (Orders orderDB : ordersList) {
-                //将订单修改为完成状态
-                Orders orders = Orders.builder()
-                        .id(orderDB.getId())
-                        .status(Orders.COMPLETED)
-                        .build();
-                //更新数据库
-                orderMapper.update(orders);
-            }
-        }
+        Orders orders = Orders.builder()
+                .status(Orders.COMPLETED)
+                .build();
 
+        Set<LocalDate> orderDates = new HashSet<>();
+        int count = updateStatusInBatches(Orders.DELIVERY_IN_PROGRESS, lastDay, orders, orderDates);
+        if (count > 0) {
+            log.info("派送中订单已完成：{}单", count);
+        }
 
+        //订单完成会影响营业数据，更新这些订单所在营业日的汇总
+        orderDates.forEach(date -> businessDataDailyService.refreshIfClosed(date.atStartOfDay()));
     }
 
+    /**
+     * 分批修改指定状态、下单时间早于指定时间的订单，每批一条带状态条件的update语句
+     *
+     * @param status     订单当前状态
+     * @param orderTime  下单时间上限
+     * @param orders     修改后的状态等信息
+     * @param orderDates 不为null时，收集被修改订单的下单日期
+     * @return 实际修改的订单数
+     */
+    private int updateStatusInBatches(Integer status, LocalDateTime orderTime, Orders orders, Set<LocalDate> orderDates) {
+        int count = 0;
+        List<Orders> ordersList;
+        do {
+            ordersList = orderMapper.getByStatusAndOrderTimeLT(status, orderTime, BATCH_SIZE);
+            if (ordersList.isEmpty()) {
+                break;
+            }
+
+            //按下单日期分组修改，以便按天调整订单状态计数
+            Map<LocalDate, List<Long>> idsByDate = ordersList.stream().collect(Collectors.groupingBy(
+                    o -> o.getOrderTime().toLocalDate(),
+                    Collectors.mapping(Orders::getId, Collectors.toList())));
+            for (Map.Entry<LocalDate, List<Long>> entry : idsByDate.entrySet()) {
+                int updated = orderMapper.updateStatusByIds(entry.getValue(), status, orders);
+                orderStatusCounter.transition(entry.getKey(), status, orders.getStatus(), updated);
+                count += updated;
+            }
+
+            if (orderDates != null) {
+                orderDates.addAll(idsByDate.keySet());
+            }
+        } while (ordersList.size() == BATCH_SIZE);
+        return count;
+    }
 
 }
@@ -0,0 +1,136 @@
+package com.sky.task;
+
+import com.sky.cache.OrderStatusCounter;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单超时延迟队列
+ * 下单时把订单id放入Redis有序集合，score为超时时间，每秒取出已到期的订单取消，
+ * 不再需要每分钟扫描订单表，OrderTask中的定时任务只作为兜底
+ * 使用独立的调度线程，不受其他定时任务（对账、汇总等）耗时的影响
+ */
+@Component
+@Slf4j
+public class OrderTimeoutQueue {
+
+    //未支付订单的超时时间（分钟）
+    public static final int TIMEOUT_MINUTES = 15;
+
+    private static final String KEY = "order_timeout";
+    //每次最多取出的到期订单数
+    private static final int BATCH_SIZE = 100;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-timeout-queue");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //每秒执行一次，异常时记录日志，不中断后续调度
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                processExpiredOrder();
+            } catch (Exception e) {
+                log.error("处理超时未支付订单失败", e);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 登记订单的超时时间
+     * 登记失败不影响下单，由OrderTask兜底取消
+     *
+     * @param orderId
+     * @param orderTime
+     */
+    public void add(Long orderId, LocalDateTime orderTime) {
+        long expireAt = orderTime.plusMinutes(TIMEOUT_MINUTES)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        try {
+            stringRedisTemplate.opsForZSet().add(KEY, orderId.toString(), expireAt);
+        } catch (Exception e) {
+            log.warn("登记订单超时时间失败：{}，{}", orderId, e.getMessage());
+        }
+    }
+
+    /**
+     * 取消已到期的未支付订单
+     */
+    public void processExpiredOrder() {
+        Set<ZSetOperations.TypedTuple<String>> members;
+        do {
+            members = stringRedisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(KEY, 0, System.currentTimeMillis(), 0, BATCH_SIZE);
+            if (members == null || members.isEmpty()) {
+                return;
+            }
+
+            //多个实例同时取到同一订单时，只有删除成功的实例处理该订单
+            //按下单日期（超时时间减去超时时长）分组，以便按天调整订单状态计数
+            Map<LocalDate, List<Long>> idsByDate = new HashMap<>();
+            for (ZSetOperations.TypedTuple<String> member : members) {
+                Long removed = stringRedisTemplate.opsForZSet().remove(KEY, member.getValue());
+                if (removed != null && removed > 0) {
+                    LocalDate orderDate = Instant.ofEpochMilli(member.getScore().longValue())
+                            .atZone(ZoneId.systemDefault())
+                            .minusMinutes(TIMEOUT_MINUTES)
+                            .toLocalDate();
+                    idsByDate.computeIfAbsent(orderDate, date -> new ArrayList<>()).add(Long.valueOf(member.getValue()));
+                }
+            }
+
+            //只取消仍未付款的订单，已支付、已取消的订单不受影响
+            Orders orders = Orders.builder()
+                    .status(Orders.CANCELLED)
+                    .cancelReason("超时未支付自动取消")
+                    .cancelTime(LocalDateTime.now())
+                    .build();
+            int count = 0;
+            for (Map.Entry<LocalDate, List<Long>> entry : idsByDate.entrySet()) {
+                int updated = orderMapper.updateStatusByIds(entry.getValue(), Orders.PENDING_PAYMENT, orders);
+                orderStatusCounter.transition(entry.getKey(), Orders.PENDING_PAYMENT, Orders.CANCELLED, updated);
+                count += updated;
+            }
+            if (count > 0) {
+                log.info("超时未支付订单已取消：{}单", count);
+            }
+        } while (members.size() == BATCH_SIZE);
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.sky.task;
+
+import com.sky.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 生成订单号使用的机器id租约
+ * 未配置机器id时，实例启动时在Redis中抢占一个空闲的机器id（key=order_worker_id_机器id，value为实例标识），
+ * 运行期间定期续期，关闭时释放；实例异常退出后租约到期，机器id可被其他实例使用
+ * 租约丢失（被其他实例占用，或Redis长时间不可用导致租约可能已过期）时暂停生成订单号，重新抢占到机器id后恢复，
+ * 保证同一时刻一个机器id只被一个实例使用
+ */
+@Component
+@Slf4j
+public class WorkerIdLease {
+
+    private static final String KEY_PREFIX = "order_worker_id_";
+    //租约时长（秒）
+    private static final long LEASE_SECONDS = 60;
+    //续期间隔（秒）
+    private static final long RENEW_SECONDS = 10;
+
+    //只有持有租约的实例才能续期、释放
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then\n" +
+            "    return redis.call('expire', KEYS[1], ARGV[2])\n" +
+            "end\n" +
+            "return 0",
+            Long.class);
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then\n" +
+            "    return redis.call('del', KEYS[1])\n" +
+            "end\n" +
+            "return 0",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    //当前实例的标识
+    private final String owner = UUID.randomUUID().toString();
+    //当前持有的机器id，未持有时为null
+    private volatile Long workerId;
+    //本地估算的租约到期时间（毫秒），以发起续期前的时间计算，不晚于Redis中的实际到期时间
+    private volatile long leaseExpireAt;
+    private SnowflakeIdGenerator generator;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 抢占一个空闲的机器id，创建使用该机器id的订单号生成器，并开始定期续期
+     *
+     * @return
+     */
+    public synchronized SnowflakeIdGenerator newGenerator() {
+        if (generator != null) {
+            return generator;
+        }
+        long id = tryAcquire(null);
+        if (id < 0) {
+            throw new IllegalStateException("没有空闲的订单号机器id");
+        }
+        generator = new SnowflakeIdGenerator(id);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "worker-id-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::renew, RENEW_SECONDS, RENEW_SECONDS, TimeUnit.SECONDS);
+        return generator;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        Long id = workerId;
+        if (id == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(KEY_PREFIX + id), owner);
+        } catch (Exception e) {
+            log.warn("释放订单号机器id失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 续期；租约已被其他实例占用时暂停生成订单号并重新抢占机器id，
+     * Redis不可用导致下次续期前租约可能过期时也暂停生成，直到续期成功
+     */
+    private void renew() {
+        long now = System.currentTimeMillis();
+        Long id = workerId;
+        try {
+            if (id != null) {
+                Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(KEY_PREFIX + id),
+                        owner, String.valueOf(LEASE_SECONDS));
+                if (renewed != null && renewed == 1) {
+                    leaseExpireAt = now + TimeUnit.SECONDS.toMillis(LEASE_SECONDS);
+                    generator.setWorkerId(id);
+                    return;
+                }
+                //租约已过期或被其他实例占用
+                generator.suspend();
+                workerId = null;
+                log.error("订单号机器id {} 的租约已丢失，暂停生成订单号并重新获取机器id", id);
+            }
+            //优先重新抢占原来的机器id，被占用时抢占其他空闲的机器id
+            long newId = tryAcquire(id);
+            if (newId < 0) {
+                log.error("没有空闲的订单号机器id，暂停生成订单号");
+                return;
+            }
+            generator.setWorkerId(newId);
+            log.info("已恢复生成订单号，机器id：{}", newId);
+        } catch (Exception e) {
+            log.warn("订单号机器id续期失败：{}", e.getMessage());
+            if (id != null && now + TimeUnit.SECONDS.toMillis(RENEW_SECONDS) >= leaseExpireAt) {
+                //下次续期前租约可能过期，机器id可能被其他实例占用
+                generator.suspend();
+                log.error("订单号机器id {} 的租约即将过期且无法续期，暂停生成订单号", id);
+            }
+        }
+    }
+
+    /**
+     * 抢占机器id，优先抢占指定的机器id，否则从随机位置开始查找空闲的机器id，减少多个实例同时启动时的冲突
+     *
+     * @param preferred 优先抢占的机器id，可以为null
+     * @return 抢占到的机器id，没有空闲的机器id时返回-1
+     */
+    private long tryAcquire(Long preferred) {
+        long now = System.currentTimeMillis();
+        if (preferred != null && setIfAbsent(preferred)) {
+            return onAcquired(preferred, now);
+        }
+        long start = ThreadLocalRandom.current().nextLong(SnowflakeIdGenerator.MAX_WORKER_ID + 1);
+        for (long i = 0; i <= SnowflakeIdGenerator.MAX_WORKER_ID; i++) {
+            long id = (start + i) % (SnowflakeIdGenerator.MAX_WORKER_ID + 1);
+            if (setIfAbsent(id)) {
+                return onAcquired(id, now);
+            }
+        }
+        return -1;
+    }
+
+    private boolean setIfAbsent(long id) {
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                .setIfAbsent(KEY_PREFIX + id, owner, LEASE_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private long onAcquired(long id, long now) {
+        workerId = id;
+        leaseExpireAt = now + TimeUnit.SECONDS.toMillis(LEASE_SECONDS);
+        log.info("已获取订单号机器id：{}", id);
+        return id;
+    }
+}
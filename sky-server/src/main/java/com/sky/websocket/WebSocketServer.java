@@ -1,33 +1,83 @@
 package com.sky.websocket;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import javax.websocket.CloseReason;
 import javax.websocket.OnClose;
+import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.util.Collection;
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * WebSocket服务
+ * 群发只把消息放入每个客户端的有界队列，由专门的发送线程异步发送，不阻塞调用方（如支付回调）
  */
 @Component
 @ServerEndpoint("/ws/{sid}")
+@Slf4j
 public class WebSocketServer {
 
-    //存放会话对象
-    private static Map<String, Session> sessionMap = new HashMap();
+    //每个客户端最多积压的消息数，超过后认为客户端过慢，断开连接
+    private static final int CLIENT_QUEUE_CAPACITY = 100;
+    //单条消息的发送超时时间（毫秒）
+    private static final long SEND_TIMEOUT_MSEC = 5 * 1000;
+    //发送线程池已满时，延迟重新提交发送任务的时间（毫秒）
+    private static final long RESUBMIT_DELAY_MSEC = 100;
+
+    //存放客户端
+    private static final Map<String, Client> clientMap = new ConcurrentHashMap<>();
+
+    //发送线程编号
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    //发送线程池，每个客户端同时最多只有一个发送任务
+    private static final ExecutorService sendExecutor = new ThreadPoolExecutor(
+            2, 2, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(1000),
+            runnable -> {
+                Thread thread = new Thread(runnable, "websocket-send-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    //发送线程池已满时延迟重新提交发送任务，保证队列中的消息最终被发送
+    private static final ScheduledExecutorService resubmitExecutor = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "websocket-resubmit");
+                thread.setDaemon(true);
+                return thread;
+            });
+    //发送线程池已满导致发送任务被拒绝的次数
+    private static final AtomicLong rejectedCount = new AtomicLong();
 
     /**
      * 连接建立成功调用的方法
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
-        System.out.println("客户端：" + sid + "建立连接");
-        sessionMap.put(sid, session);
+        log.info("客户端：{}建立连接", sid);
+        session.getAsyncRemote().setSendTimeout(SEND_TIMEOUT_MSEC);
+        Client old = clientMap.put(sid, new Client(sid, session));
+        if (old != null) {
+            //同一个sid重新连接，关闭旧连接
+            close(old, "replaced");
+        }
     }
 
     /**
@@ -37,7 +87,7 @@ public class WebSocketServer {
      */
     @OnMessage
     public void onMessage(String message, @PathParam("sid") String sid) {
-        System.out.println("收到来自客户端：" + sid + "的信息:" + message);
+        log.info("收到来自客户端：{}的信息:{}", sid, message);
     }
 
     /**
@@ -46,25 +96,155 @@ public class WebSocketServer {
      * @param sid
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
-        System.out.println("连接断开:" + sid);
-        sessionMap.remove(sid);
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        log.info("连接断开:{}", sid);
+        remove(sid, session);
+    }
+
+    /**
+     * 连接出错调用的方法
+     *
+     * @param sid
+     * @param throwable
+     */
+    @OnError
+    public void onError(Session session, @PathParam("sid") String sid, Throwable throwable) {
+        log.warn("连接出错:{}，{}", sid, throwable.getMessage());
+        remove(sid, session);
     }
 
     /**
-     * 群发
+     * 群发，只负责将消息放入各客户端的队列，立即返回
      *
      * @param message
      */
     public void sendToAllClient(String message) {
-        Collection<Session> sessions = sessionMap.values();
-        for (Session session : sessions) {
-            try {
-                //服务器向客户端发送消息
-                session.getBasicRemote().sendText(message);
-            } catch (Exception e) {
-                e.printStackTrace();
+        for (Client client : clientMap.values()) {
+            if (!client.queue.offer(message)) {
+                //队列已满，客户端接收过慢，断开连接
+                log.warn("客户端：{}消息积压过多，断开连接", client.sid);
+                evict(client);
+                continue;
+            }
+            scheduleSend(client);
+        }
+    }
+
+    /**
+     * 客户端当前没有发送任务时，提交一个发送任务
+     *
+     * @param client
+     */
+    private static void scheduleSend(Client client) {
+        if (!client.sending.compareAndSet(false, true)) {
+            return;
+        }
+        submitSend(client);
+    }
+
+    /**
+     * 向发送线程池提交发送任务，调用方已持有客户端的发送标记
+     * 线程池已满时保持发送标记，延迟后重新提交，消息留在客户端队列中不会丢失
+     *
+     * @param client
+     */
+    private static void submitSend(Client client) {
+        try {
+            sendExecutor.execute(() -> sendNext(client));
+        } catch (RejectedExecutionException e) {
+            if (clientMap.get(client.sid) != client) {
+                //客户端已断开，不再发送
+                client.sending.set(false);
+                return;
+            }
+            log.warn("发送线程池已满，客户端：{}的消息延迟{}毫秒后重新发送，累计拒绝{}次",
+                    client.sid, RESUBMIT_DELAY_MSEC, rejectedCount.incrementAndGet());
+            resubmitExecutor.schedule(() -> submitSend(client), RESUBMIT_DELAY_MSEC, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 异步发送客户端队列中的下一条消息，发送完成后继续发送下一条
+     *
+     * @param client
+     */
+    private static void sendNext(Client client) {
+        String message = client.queue.poll();
+        if (message == null) {
+            client.sending.set(false);
+            //释放发送标记后可能有新消息进入队列
+            if (!client.queue.isEmpty()) {
+                scheduleSend(client);
             }
+            return;
+        }
+        try {
+            client.session.getAsyncRemote().sendText(message, result -> {
+                if (!result.isOK()) {
+                    log.warn("向客户端：{}发送消息失败，断开连接", client.sid);
+                    evict(client);
+                    client.sending.set(false);
+                    return;
+                }
+                submitSend(client);
+            });
+        } catch (Exception e) {
+            log.warn("向客户端：{}发送消息失败，断开连接", client.sid);
+            evict(client);
+            client.sending.set(false);
+        }
+    }
+
+    /**
+     * 移除并关闭客户端
+     *
+     * @param client
+     */
+    private static void evict(Client client) {
+        clientMap.remove(client.sid, client);
+        client.queue.clear();
+        close(client, "too slow");
+    }
+
+    /**
+     * 关闭客户端连接
+     *
+     * @param client
+     * @param reason
+     */
+    private static void close(Client client, String reason) {
+        try {
+            client.session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, reason));
+        } catch (IOException e) {
+            log.debug("关闭客户端：{}连接失败", client.sid);
+        }
+    }
+
+    /**
+     * 会话关闭时移除对应的客户端，不影响同一sid重连后的新会话
+     *
+     * @param sid
+     * @param session
+     */
+    private static void remove(String sid, Session session) {
+        Client client = clientMap.get(sid);
+        if (client != null && client.session == session) {
+            clientMap.remove(sid, client);
+        }
+    }
+
+    /**
+     * 客户端：会话、待发送消息队列、是否有发送任务
+     */
+    private static class Client {
+        private final String sid;
+        private final Session session;
+        private final Queue<String> queue = new ArrayBlockingQueue<>(CLIENT_QUEUE_CAPACITY);
+        private final AtomicBoolean sending = new AtomicBoolean(false);
+
+        private Client(String sid, Session session) {
+            this.sid = sid;
+            this.session = session;
         }
     }
 
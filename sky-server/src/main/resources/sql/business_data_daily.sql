@@ -0,0 +1,16 @@
+-- 每日营业数据汇总表
+-- 已结束的营业日由BusinessDataDailyService维护，报表直接读取，当天数据仍实时统计
+create table if not exists business_data_daily
+(
+    business_date     date           not null comment '营业日期',
+    turnover          decimal(12, 2) not null default 0 comment '营业额',
+    total_order_count int            not null default 0 comment '订单总数',
+    valid_order_count int            not null default 0 comment '有效订单数',
+    new_users         int            not null default 0 comment '新增用户数',
+    update_time       datetime                default null comment '统计时间',
+    primary key (business_date)
+) comment '每日营业数据汇总';
+
+-- 汇总按下单时间和注册时间分组，需要对应的索引支持
+create index idx_orders_order_time on orders (order_time);
+create index idx_user_create_time on user (create_time);
@@ -0,0 +1,4 @@
+-- 订单游标分页使用的索引
+-- 历史订单按用户查询，按(order_time, id)倒序定位下一页
+create index idx_orders_user_order_time on orders (user_id, order_time);
+-- 管理端订单搜索使用business_data_daily.sql中创建的idx_orders_order_time，二级索引已包含主键id
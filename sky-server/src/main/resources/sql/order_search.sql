@@ -0,0 +1,23 @@
+-- 订单搜索使用的索引
+-- 订单号、手机号按前缀或精确匹配，可以使用索引
+create index idx_orders_number on orders (number);
+create index idx_orders_phone on orders (phone);
+
+-- 订单手机号后缀表，sky.order.search-mode为suffix时使用
+-- 手机号的每个后缀一行，任意位置的部分匹配转换为对后缀的前缀匹配
+create table if not exists order_phone_suffix
+(
+    suffix   varchar(11) not null comment '手机号后缀',
+    order_id bigint      not null comment '订单id',
+    primary key (suffix, order_id)
+) comment '订单手机号后缀';
+
+-- 为已有订单生成手机号后缀
+insert ignore into order_phone_suffix(suffix, order_id)
+select substring(o.phone, n.n), o.id
+from orders o
+         join (select 1 n union all select 2 union all select 3 union all select 4
+               union all select 5 union all select 6 union all select 7 union all select 8
+               union all select 9 union all select 10 union all select 11) n
+              on n.n <= char_length(o.phone)
+where o.phone is not null;
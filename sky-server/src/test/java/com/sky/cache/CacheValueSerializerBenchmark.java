@@ -0,0 +1,73 @@
+package com.sky.cache;
+
+import com.sky.vo.DishVO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存值序列化器的基准测试：JDK格式与JSON+GZIP格式编码、解码一个分类下50个菜品的平均耗时
+ * 运行方式：在IDE中运行main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheValueSerializerBenchmark {
+
+    private final CacheValueSerializer jdkSerializer = new CacheValueSerializer(new JdkSerializationRedisSerializer(), 0);
+    private final CacheValueSerializer jsonSerializer = new CacheValueSerializer(CacheValueSerializer.json(), 1024);
+
+    private List<DishVO> dishes;
+    private byte[] jdkBytes;
+    private byte[] jsonBytes;
+
+    @Setup
+    public void setup() {
+        dishes = CacheValueSerializerTest.createDishes(50);
+        jdkBytes = jdkSerializer.serialize(dishes);
+        jsonBytes = jsonSerializer.serialize(dishes);
+    }
+
+    @Benchmark
+    public byte[] jdkSerialize() {
+        return jdkSerializer.serialize(dishes);
+    }
+
+    @Benchmark
+    public byte[] jsonGzipSerialize() {
+        return jsonSerializer.serialize(dishes);
+    }
+
+    @Benchmark
+    public Object jdkDeserialize() {
+        return jdkSerializer.deserialize(jdkBytes);
+    }
+
+    @Benchmark
+    public Object jsonGzipDeserialize() {
+        return jsonSerializer.deserialize(jsonBytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CacheValueSerializerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
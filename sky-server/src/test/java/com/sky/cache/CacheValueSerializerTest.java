@@ -0,0 +1,75 @@
+package com.sky.cache;
+
+import com.sky.entity.DishFlavor;
+import com.sky.vo.DishVO;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 缓存值序列化器：JDK格式与JSON+GZIP格式的大小、往返一致性对比
+ * 编码、解码耗时的对比见CacheValueSerializerBenchmark
+ */
+public class CacheValueSerializerTest {
+
+    private final CacheValueSerializer jdkSerializer = new CacheValueSerializer(new JdkSerializationRedisSerializer(), 0);
+    private final CacheValueSerializer jsonSerializer = new CacheValueSerializer(CacheValueSerializer.json(), 1024);
+
+    @Test
+    public void jsonRoundTripKeepsFullPrecision() {
+        List<DishVO> dishes = createDishes(20);
+        Object result = jsonSerializer.deserialize(jsonSerializer.serialize(dishes));
+        //时间需要保留秒和纳秒，与未缓存时查询的数据一致
+        assertEquals(dishes, result);
+    }
+
+    @Test
+    public void jdkRoundTrip() {
+        List<DishVO> dishes = createDishes(20);
+        assertEquals(dishes, jdkSerializer.deserialize(jdkSerializer.serialize(dishes)));
+    }
+
+    @Test
+    public void jsonReadsJdkData() {
+        //切换序列化格式之前写入的JDK格式数据仍然可以读取
+        List<DishVO> dishes = createDishes(5);
+        assertEquals(dishes, jsonSerializer.deserialize(jdkSerializer.serialize(dishes)));
+    }
+
+    @Test
+    public void jsonGzipIsSmallerThanJdk() {
+        List<DishVO> dishes = createDishes(50);
+        int jdkSize = jdkSerializer.serialize(dishes).length;
+        int jsonSize = jsonSerializer.serialize(dishes).length;
+        assertTrue(jsonSize < jdkSize);
+    }
+
+    static List<DishVO> createDishes(int count) {
+        List<DishVO> dishes = new ArrayList<>();
+        for (long i = 1; i <= count; i++) {
+            dishes.add(DishVO.builder()
+                    .id(i)
+                    .name("菜品" + i)
+                    .categoryId(11L)
+                    .price(new BigDecimal("28.00"))
+                    .image("https://sky-take-out.oss-cn-beijing.aliyuncs.com/dish" + i + ".png")
+                    .description("菜品" + i + "的描述信息")
+                    .status(1)
+                    .updateTime(LocalDateTime.of(2023, 5, 20, 11, 30, 45, 123456000))
+                    .categoryName("热菜")
+                    .flavors(new ArrayList<>(Arrays.asList(
+                            DishFlavor.builder().id(i * 2).dishId(i).name("辣度").value("[\"不辣\",\"微辣\",\"中辣\",\"重辣\"]").build(),
+                            DishFlavor.builder().id(i * 2 + 1).dishId(i).name("忌口").value("[\"不要葱\",\"不要蒜\",\"不要香菜\"]").build())))
+                    .build());
+        }
+        return dishes;
+    }
+}
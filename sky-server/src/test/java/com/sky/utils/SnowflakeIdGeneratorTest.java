@@ -0,0 +1,95 @@
+package com.sky.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 雪花算法id生成器：多线程下id唯一、单线程内单调递增、不同机器id之间不重复
+ */
+public class SnowflakeIdGeneratorTest {
+
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 100000;
+
+    @Test
+    public void uniqueAcrossThreads() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    long prev = 0;
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        long id = generator.nextId();
+                        //同一线程内单调递增
+                        if (id <= prev) {
+                            return false;
+                        }
+                        prev = id;
+                        ids.add(id);
+                    }
+                    return true;
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(THREADS * IDS_PER_THREAD, ids.size());
+    }
+
+    @Test
+    public void uniqueAcrossWorkers() {
+        //模拟多个实例同时生成订单号
+        List<SnowflakeIdGenerator> generators = new ArrayList<>();
+        for (long workerId = 0; workerId < 4; workerId++) {
+            generators.add(new SnowflakeIdGenerator(workerId));
+        }
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < IDS_PER_THREAD; i++) {
+            for (SnowflakeIdGenerator generator : generators) {
+                ids.add(generator.nextId());
+            }
+        }
+        assertEquals(generators.size() * IDS_PER_THREAD, ids.size());
+    }
+
+    @Test
+    public void suspendStopsGeneratingUntilWorkerIdIsSet() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+        long before = generator.nextId();
+        generator.suspend();
+        assertThrows(IllegalStateException.class, generator::nextId);
+        generator.setWorkerId(2);
+        long after = generator.nextId();
+        assertTrue(after > before);
+        assertEquals(2L, (after >> 12) & SnowflakeIdGenerator.MAX_WORKER_ID);
+    }
+
+    @Test
+    public void rejectsInvalidWorkerId() {
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1));
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_WORKER_ID + 1));
+    }
+}